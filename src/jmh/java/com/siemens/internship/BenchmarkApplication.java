@@ -0,0 +1,50 @@
+package com.siemens.internship;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts the application without a web server on its own in-memory H2 database, and fills it with items.
+ */
+final class BenchmarkApplication {
+    private static final int SEED_BATCH = 10_000;
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String database) {
+        return new SpringApplicationBuilder(InternshipApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:" + database + ";DB_CLOSE_DELAY=-1",
+                        "logging.level.root=WARN")
+                .run();
+    }
+
+    //inserts items 1..count with plain jdbc batches, then moves the sequence past them
+    static void seed(ConfigurableApplicationContext context, int count) {
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        jdbc.update("DELETE FROM item");
+        for (int from = 1; from <= count; from += SEED_BATCH) {
+            List<Object[]> rows = new ArrayList<>(SEED_BATCH);
+            for (long id = from; id < from + SEED_BATCH && id <= count; id++) {
+                rows.add(new Object[]{id, "Item " + id, "Benchmark item " + id, "NEW", "item" + id + "@example.com"});
+            }
+            jdbc.batchUpdate("INSERT INTO item (id, name, description, status, email, version, last_modified) VALUES (?, ?, ?, ?, ?, 0, CURRENT_TIMESTAMP)", rows);
+        }
+        jdbc.execute("ALTER SEQUENCE item_seq RESTART WITH " + (count + 100));
+    }
+
+    static List<Item> newItems(int count) {
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new Item(null, "Item " + i, "Benchmark item " + i, "NEW", "item" + i + "@example.com"));
+        }
+        return items;
+    }
+}
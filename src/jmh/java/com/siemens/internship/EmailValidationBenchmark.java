@@ -0,0 +1,80 @@
+package com.siemens.internship;
+
+import jakarta.validation.ConstraintValidator;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.constraints.Email;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//1000 emails or items per invocation: hibernate validator's regex @Email validator against EmailValidator,
+//and a batch of valid items through the full validator against the batch service's fast path
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailValidationBenchmark {
+    private static final int SIZE = 1000;
+
+    private ConstraintValidator<Email, CharSequence> hibernate;
+    private Validator validator;
+    private ItemBatchService batchService;
+    private List<String> emails;
+    private List<Item> items;
+
+    @Setup(Level.Trial)
+    public void setUp() throws NoSuchFieldException {
+        var regex = new org.hibernate.validator.internal.constraintvalidators.bv.EmailValidator();
+        regex.initialize(Item.class.getDeclaredField("email").getAnnotation(Email.class));
+        hibernate = regex;
+        validator = Validation.buildDefaultValidatorFactory().getValidator();
+        batchService = new ItemBatchService();
+        ReflectionTestUtils.setField(batchService, "validator", validator);
+        //one in ten emails is invalid
+        emails = new ArrayList<>();
+        items = new ArrayList<>();
+        for (int i = 0; i < SIZE; i++) {
+            emails.add(i % 10 == 0 ? "invalid" + i + "@" : "first.last" + i + "@mail" + i % 7 + ".example.com");
+            items.add(new Item((long) i, "Item " + i, "desc", "NEW", "item" + i + "@example.com"));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void regexEmails(Blackhole blackhole) {
+        for (String email : emails) {
+            blackhole.consume(hibernate.isValid(email, null));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void handWrittenEmails(Blackhole blackhole) {
+        for (String email : emails) {
+            blackhole.consume(EmailValidator.isValid(email));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void validatorItems(Blackhole blackhole) {
+        for (Item item : items) {
+            blackhole.consume(validator.validate(item));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIZE)
+    public void batchFastPathItems(Blackhole blackhole) {
+        for (Item item : items) {
+            blackhole.consume(batchService.validate(item, false));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.siemens.internship;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+//lookups of a hot set of ids, through the item cache and straight from the repository
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FindByIdBenchmark {
+    private static final int ITEMS = 10_000;
+    private static final int HOT_IDS = 1_000;
+
+    private ConfigurableApplicationContext context;
+    private ItemService itemService;
+    private ItemRepository itemRepository;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkApplication.start("lookups");
+        BenchmarkApplication.seed(context, ITEMS);
+        itemService = context.getBean(ItemService.class);
+        itemRepository = context.getBean(ItemRepository.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<Item> cached() {
+        return itemService.findById(hotId());
+    }
+
+    @Benchmark
+    public Optional<Item> uncached() {
+        return itemRepository.findById(hotId());
+    }
+
+    private static long hotId() {
+        return ThreadLocalRandom.current().nextLong(1, HOT_IDS + 1);
+    }
+}
@@ -0,0 +1,48 @@
+package com.siemens.internship;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+//one full processing run per invocation, every item is changed again before each one so the incremental run has
+//the whole table to process instead of finding nothing changed since the last invocation
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ProcessingBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int items;
+
+    private ConfigurableApplicationContext context;
+    private ItemService itemService;
+    private JdbcTemplate jdbc;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkApplication.start("processing");
+        BenchmarkApplication.seed(context, items);
+        itemService = context.getBean(ItemService.class);
+        jdbc = context.getBean(JdbcTemplate.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+        jdbc.update("UPDATE item SET processed_at = NULL, last_modified = CURRENT_TIMESTAMP, status = 'NEW'");
+        jdbc.update("DELETE FROM processing_mark");
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public ProcessingSummary processItemsAsync() {
+        return itemService.processItemsAsync().join();
+    }
+}
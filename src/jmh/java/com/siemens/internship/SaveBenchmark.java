@@ -0,0 +1,49 @@
+package com.siemens.internship;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+//inserting a batch of new items through the batch service and one save at a time
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SaveBenchmark {
+    @Param({"1000"})
+    public int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private ItemService itemService;
+    private ItemBatchService itemBatchService;
+
+    @Setup(Level.Trial)
+    public void start() {
+        context = BenchmarkApplication.start("saves");
+        itemService = context.getBean(ItemService.class);
+        itemBatchService = context.getBean(ItemBatchService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<BatchResult> bulk() {
+        return itemBatchService.createAll(BenchmarkApplication.newItems(batchSize).iterator());
+    }
+
+    @Benchmark
+    public Item perRow() {
+        Item last = null;
+        for (Item item : BenchmarkApplication.newItems(batchSize)) {
+            last = itemService.save(item);
+        }
+        return last;
+    }
+}
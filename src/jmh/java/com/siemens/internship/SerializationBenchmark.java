@@ -0,0 +1,71 @@
+package com.siemens.internship;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+//serialization of item lists the size of a page and of a large listing, in each format the api offers
+//the payload sizes, plain and gzipped, are printed when a trial starts
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"100", "10000"})
+    public int items;
+
+    @Param({"json", "cbor", "smile"})
+    public String format;
+
+    @Param({"false", "true"})
+    public boolean blackbird;
+
+    private ObjectMapper objectMapper;
+    private List<Item> list;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        //configured the way spring boot configures its own mappers
+        Jackson2ObjectMapperBuilder builder = switch (format) {
+            case "json" -> Jackson2ObjectMapperBuilder.json();
+            case "cbor" -> Jackson2ObjectMapperBuilder.cbor();
+            case "smile" -> Jackson2ObjectMapperBuilder.smile();
+            default -> throw new IllegalArgumentException("Unknown format " + format);
+        };
+        if (blackbird) {
+            builder.modulesToInstall(new BlackbirdModule());
+        }
+        objectMapper = builder.build();
+        list = BenchmarkApplication.newItems(items);
+        for (int i = 0; i < list.size(); i++) {
+            list.get(i).setId((long) i);
+            list.get(i).setVersion(0L);
+        }
+        System.out.printf("%n%s, %d items: %d bytes, %d gzipped%n", format, items, serializeList().length, serializeListGzipped().length);
+    }
+
+    @Benchmark
+    public byte[] serializeList() throws IOException {
+        return objectMapper.writeValueAsBytes(list);
+    }
+
+    //what the server does for a client sending Accept-Encoding: gzip
+    @Benchmark
+    public byte[] serializeListGzipped() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            objectMapper.writeValue(out, list);
+        }
+        return bytes.toByteArray();
+    }
+}
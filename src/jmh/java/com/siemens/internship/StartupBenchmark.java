@@ -0,0 +1,52 @@
+package com.siemens.internship;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+//time from starting the application to its first answered request, measured once per fork so every start is cold
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class StartupBenchmark {
+    @Param({"default", "lazy"})
+    public String profile;
+
+    private HttpClient client;
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        client = HttpClient.newHttpClient();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+    }
+
+    @Benchmark
+    public int firstRequest() throws Exception {
+        context = new SpringApplicationBuilder(InternshipApplication.class)
+                .profiles(profile)
+                .run("--server.port=0", "--spring.datasource.url=jdbc:h2:mem:startup", "--logging.level.root=WARN");
+        int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+        HttpResponse<Void> response = client.send(
+                HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/items?limit=1")).GET().build(),
+                HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("First request answered " + response.statusCode());
+        }
+        return response.statusCode();
+    }
+}
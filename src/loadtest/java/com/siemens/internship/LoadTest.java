@@ -0,0 +1,270 @@
+package com.siemens.internship;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives the items REST API of a real server, on a random port against embedded H2, with a mix of reads and writes
+ * from a number of closed loop clients, plus one client calling /api/items/process every process-interval.
+ * After a warmup every request is timed, and the run reports requests per second and p50/p99 latency per operation
+ * and for the whole mix.
+ * It exits with status 1 when a threshold from {@link LoadTestOptions} is missed, which fails the maven build.
+ * The rate limit is switched off, the clients all share one address.
+ */
+public final class LoadTest {
+    private static final int SEED_BATCH = 10_000;
+    private static final int PAGE_SIZE = 50;
+    //latencies are recorded in microseconds, up to a minute
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final LoadTestOptions options;
+    private final HttpClient client;
+    private final String baseUrl;
+    private final Map<LoadTestOptions.Operation, Stats> stats = new EnumMap<>(LoadTestOptions.Operation.class);
+    private final List<LoadTestOptions.Operation> weighted = new ArrayList<>();
+    private volatile boolean recording;
+    private volatile boolean running = true;
+    //every operation together and how long was recorded, once the run is over
+    private Stats total;
+    private double seconds;
+
+    private LoadTest(LoadTestOptions options, int port) {
+        this.options = options;
+        this.baseUrl = "http://localhost:" + port + "/api/items";
+        this.client = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(Math.max(2, options.clients() / 4)))
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        for (LoadTestOptions.Operation operation : LoadTestOptions.Operation.values()) {
+            stats.put(operation, new Stats());
+        }
+        options.mix().forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                weighted.add(operation);
+            }
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        ConfigurableApplicationContext context = SpringApplication.run(InternshipApplication.class,
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1",
+                "--items.rate-limit.enabled=false",
+                "--logging.level.root=WARN");
+        int exitCode;
+        try {
+            seed(context, options.items());
+            int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+            LoadTest loadTest = new LoadTest(options, port);
+            Map<String, Object> result = loadTest.run();
+            Files.createDirectories(options.result().toAbsolutePath().getParent());
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(options.result().toFile(), result);
+            List<String> violations = loadTest.violations();
+            violations.forEach(violation -> System.out.println("THRESHOLD MISSED: " + violation));
+            exitCode = violations.isEmpty() ? 0 : 1;
+        } finally {
+            context.close();
+        }
+        System.exit(exitCode);
+    }
+
+    //inserts items 1..count with plain jdbc batches, then moves the sequence past them
+    private static void seed(ConfigurableApplicationContext context, int count) {
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        for (int from = 1; from <= count; from += SEED_BATCH) {
+            List<Object[]> rows = new ArrayList<>(SEED_BATCH);
+            for (long id = from; id < from + SEED_BATCH && id <= count; id++) {
+                rows.add(new Object[]{id, "Item " + id, "Load test item " + id, "NEW", "item" + id + "@example.com"});
+            }
+            jdbc.batchUpdate("INSERT INTO item (id, name, description, status, email, version, last_modified) VALUES (?, ?, ?, ?, ?, 0, CURRENT_TIMESTAMP)", rows);
+        }
+        jdbc.execute("ALTER SEQUENCE item_seq RESTART WITH " + (count + 100));
+    }
+
+    private Map<String, Object> run() throws InterruptedException {
+        ExecutorService clients = Executors.newFixedThreadPool(options.clients() + 1);
+        for (int i = 0; i < options.clients(); i++) {
+            clients.execute(this::mixedClient);
+        }
+        clients.execute(this::processClient);
+        Thread.sleep(options.warmup().toMillis());
+        recording = true;
+        long started = System.nanoTime();
+        Thread.sleep(options.duration().toMillis());
+        recording = false;
+        seconds = (System.nanoTime() - started) / 1e9;
+        running = false;
+        clients.shutdown();
+        if (!clients.awaitTermination(1, TimeUnit.MINUTES)) {
+            clients.shutdownNow();
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("clients", options.clients());
+        result.put("durationSeconds", seconds);
+        total = new Stats();
+        Map<String, Object> operations = new LinkedHashMap<>();
+        System.out.printf("%-8s %10s %10s %10s %10s %10s %8s%n", "op", "requests", "req/s", "p50 ms", "p99 ms", "max ms", "errors");
+        stats.forEach((operation, operationStats) -> {
+            if (operationStats.latencies.getTotalCount() > 0 || operationStats.errors.sum() > 0) {
+                operations.put(operation.name().toLowerCase(), operationStats.report(seconds, operation.name().toLowerCase()));
+                //a processing run takes as long as the items it processes, it is reported but not part of the thresholds
+                if (operation != LoadTestOptions.Operation.PROCESS) {
+                    total.add(operationStats);
+                }
+            }
+        });
+        result.put("operations", operations);
+        result.put("total", total.report(seconds, "total"));
+        return result;
+    }
+
+    //what the run missed of the thresholds, over all requests of the mix
+    private List<String> violations() {
+        List<String> violations = new ArrayList<>();
+        Histogram latencies = total.latencies;
+        if (options.maxP50() != null && latencies.getValueAtPercentile(50) > options.maxP50().toNanos() / 1000) {
+            violations.add("p50 " + millis(latencies.getValueAtPercentile(50)) + " ms > " + options.maxP50().toMillis() + " ms");
+        }
+        if (options.maxP99() != null && latencies.getValueAtPercentile(99) > options.maxP99().toNanos() / 1000) {
+            violations.add("p99 " + millis(latencies.getValueAtPercentile(99)) + " ms > " + options.maxP99().toMillis() + " ms");
+        }
+        double rps = latencies.getTotalCount() / seconds;
+        if (rps < options.minRps()) {
+            violations.add(String.format("%.1f requests/s < %.1f", rps, options.minRps()));
+        }
+        long requests = latencies.getTotalCount() + total.errors.sum();
+        double errorRate = requests == 0 ? 1 : (double) total.errors.sum() / requests;
+        if (errorRate > options.maxErrorRate()) {
+            violations.add(String.format("error rate %.4f > %.4f", errorRate, options.maxErrorRate()));
+        }
+        return violations;
+    }
+
+    private void mixedClient() {
+        while (running) {
+            LoadTestOptions.Operation operation = weighted.get(ThreadLocalRandom.current().nextInt(weighted.size()));
+            timed(operation, request(operation));
+        }
+    }
+
+    //processing runs are rejected with 429 while others are going, that is the admission control working, not an error
+    private void processClient() {
+        while (running) {
+            timed(LoadTestOptions.Operation.PROCESS, request(LoadTestOptions.Operation.PROCESS));
+            sleep(options.processInterval());
+        }
+    }
+
+    private HttpRequest request(LoadTestOptions.Operation operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long id = random.nextLong(1, options.items() + 1);
+        return switch (operation) {
+            case READ -> HttpRequest.newBuilder(URI.create(baseUrl + "/" + id)).GET().build();
+            case PAGE -> HttpRequest.newBuilder(URI.create(baseUrl + "?after=" + id + "&limit=" + PAGE_SIZE)).GET().build();
+            case CREATE -> json(HttpRequest.newBuilder(URI.create(baseUrl)), "POST", item(random.nextLong()));
+            case UPDATE -> json(HttpRequest.newBuilder(URI.create(baseUrl + "/" + id)), "PUT", item(id));
+            case PROCESS -> HttpRequest.newBuilder(URI.create(baseUrl + "/process")).GET().build();
+        };
+    }
+
+    private static HttpRequest json(HttpRequest.Builder builder, String method, String body) {
+        return builder.header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static String item(long n) {
+        return "{\"name\":\"Item " + n + "\",\"description\":\"Load test item\",\"status\":\"NEW\",\"email\":\"load" + Math.abs(n) + "@example.com\"}";
+    }
+
+    private void timed(LoadTestOptions.Operation operation, HttpRequest request) {
+        long start = System.nanoTime();
+        int status;
+        try {
+            status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+            return;
+        }
+        if (!recording) {
+            return;
+        }
+        Stats operationStats = stats.get(operation);
+        if (status >= 200 && status < 300) {
+            operationStats.latencies.recordValue(Math.min(MAX_LATENCY_MICROS, (System.nanoTime() - start) / 1000));
+        } else if (status == 429 && operation == LoadTestOptions.Operation.PROCESS) {
+            operationStats.rejected.increment();
+        } else {
+            operationStats.errors.increment();
+        }
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    //successful requests are timed, failed ones only counted
+    private static final class Stats {
+        private final Histogram latencies = new ConcurrentHistogram(MAX_LATENCY_MICROS, 3);
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+
+        void add(Stats other) {
+            latencies.add(other.latencies);
+            errors.add(other.errors.sum());
+            rejected.add(other.rejected.sum());
+        }
+
+        Map<String, Object> report(double seconds, String name) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("requests", latencies.getTotalCount());
+            report.put("requestsPerSecond", latencies.getTotalCount() / seconds);
+            report.put("p50Millis", millis(latencies.getValueAtPercentile(50)));
+            report.put("p99Millis", millis(latencies.getValueAtPercentile(99)));
+            report.put("maxMillis", millis(latencies.getMaxValue()));
+            report.put("errors", errors.sum());
+            report.put("rejected", rejected.sum());
+            System.out.printf("%-8s %10d %10.1f %10.2f %10.2f %10.2f %8d%n", name, latencies.getTotalCount(),
+                    latencies.getTotalCount() / seconds, millis(latencies.getValueAtPercentile(50)),
+                    millis(latencies.getValueAtPercentile(99)), millis(latencies.getMaxValue()), errors.sum());
+            return report;
+        }
+    }
+}
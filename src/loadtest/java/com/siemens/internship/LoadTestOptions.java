@@ -0,0 +1,97 @@
+package com.siemens.internship;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Settings of a load test run, given as key=value arguments, e.g. clients=32 duration=30s max-p99=250ms.
+ * Durations are given in ms, s or m, as ISO-8601, or as plain milliseconds; a threshold left out isn't checked.
+ */
+record LoadTestOptions(int clients, Duration warmup, Duration duration, int items, Map<LoadTestOptions.Operation, Integer> mix,
+                       Duration processInterval, Duration maxP50, Duration maxP99, double minRps, double maxErrorRate,
+                       Path result) {
+
+    private static final Set<String> KEYS = Set.of("clients", "warmup", "duration", "items", "mix", "process-interval",
+            "max-p50", "max-p99", "min-rps", "max-error-rate", "result");
+
+    enum Operation {
+        //GET /api/items/{id} of a random seeded item
+        READ,
+        //GET /api/items, one keyset page from a random id
+        PAGE,
+        //POST /api/items
+        CREATE,
+        //PUT /api/items/{id} of a random seeded item
+        UPDATE,
+        //GET /api/items/process, on its own client every process-interval
+        PROCESS
+    }
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (split <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            String key = arg.substring(0, split);
+            if (!KEYS.contains(key)) {
+                throw new IllegalArgumentException("Unknown load test option " + key + ", expected one of " + KEYS);
+            }
+            values.put(key, arg.substring(split + 1));
+        }
+        return new LoadTestOptions(
+                Integer.parseInt(values.getOrDefault("clients", "16")),
+                duration(values.getOrDefault("warmup", "10s")),
+                duration(values.getOrDefault("duration", "30s")),
+                Integer.parseInt(values.getOrDefault("items", "10000")),
+                mix(values.getOrDefault("mix", "read:60,page:20,create:10,update:10")),
+                duration(values.getOrDefault("process-interval", "5s")),
+                values.containsKey("max-p50") ? duration(values.get("max-p50")) : null,
+                values.containsKey("max-p99") ? duration(values.get("max-p99")) : null,
+                Double.parseDouble(values.getOrDefault("min-rps", "0")),
+                Double.parseDouble(values.getOrDefault("max-error-rate", "0.01")),
+                Path.of(values.getOrDefault("result", "target/load-result.json")));
+    }
+
+    //weights of the operations the clients pick from, e.g. read:60,page:20,create:10,update:10
+    private static Map<Operation, Integer> mix(String value) {
+        Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+        for (String part : value.split(",")) {
+            String[] weight = part.split(":");
+            Operation operation = Operation.valueOf(weight[0].trim().toUpperCase(Locale.ROOT));
+            if (operation == Operation.PROCESS) {
+                throw new IllegalArgumentException("process calls are paced by process-interval, not part of the mix");
+            }
+            mix.put(operation, Integer.parseInt(weight[1].trim()));
+        }
+        return mix;
+    }
+
+    private static Duration duration(String value) {
+        String trimmed = value.trim().toLowerCase(Locale.ROOT);
+        try {
+            if (trimmed.startsWith("p")) {
+                return Duration.parse(trimmed.toUpperCase(Locale.ROOT));
+            }
+            if (trimmed.endsWith("ms")) {
+                return Duration.ofMillis(Long.parseLong(trimmed.substring(0, trimmed.length() - 2)));
+            }
+            if (trimmed.endsWith("s")) {
+                return Duration.ofSeconds(Long.parseLong(trimmed.substring(0, trimmed.length() - 1)));
+            }
+            if (trimmed.endsWith("m")) {
+                return Duration.ofMinutes(Long.parseLong(trimmed.substring(0, trimmed.length() - 1)));
+            }
+            return Duration.ofMillis(Long.parseLong(trimmed));
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Not a duration: " + value, e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.siemens.internship;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * The outcome for one element of a batch request, index is the element's position in the request.
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public record BatchResult(int index, Long id, Status status, Long version, List<String> errors) {
+    public enum Status { CREATED, UPDATED, DELETED, INVALID, NOT_FOUND, CONFLICT, FAILED }
+
+    static BatchResult of(int index, Item item, Status status) {
+        return new BatchResult(index, item.getId(), status, item.getVersion(), List.of());
+    }
+
+    static BatchResult error(int index, Long id, Status status, List<String> errors) {
+        return new BatchResult(index, id, status, null, errors);
+    }
+}
@@ -0,0 +1,135 @@
+package com.siemens.internship;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A task executor that never lets its tasks hold more than a given number of database connections.
+ * The application has two, so processing can't take the connections that async MVC requests need.
+ * Tasks run either on a bounded pool of platform threads or on one virtual thread each, and a semaphore sized to the
+ * connection pool keeps more tasks from talking to the datasource at once than there are connections.
+ * On shutdown it stops taking tasks and waits for the running ones before interrupting them.
+ * As a meter binder it reports how many tasks are running, how many wait and how many connections are left, tagged
+ * with the executor's name.
+ */
+public class BoundedTaskExecutor implements AsyncTaskExecutor, DisposableBean, MeterBinder {
+    public enum Mode { PLATFORM, VIRTUAL }
+
+    private static final Logger logger = LogManager.getLogger(BoundedTaskExecutor.class);
+
+    private final String name;
+    private final ExecutorService delegate;
+    private final Semaphore connections;
+    private final Duration shutdownTimeout;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+
+    BoundedTaskExecutor(String name, ExecutorService delegate, int connections, Duration shutdownTimeout) {
+        this.name = name;
+        this.delegate = delegate;
+        this.connections = new Semaphore(connections);
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    public static BoundedTaskExecutor create(Mode mode, int poolSize, int connections, Duration shutdownTimeout) {
+        return create("item", mode, poolSize, connections, shutdownTimeout);
+    }
+
+    //virtual mode needs Java 21, on older runtimes it falls back to the platform pool
+    public static BoundedTaskExecutor create(String name, Mode mode, int poolSize, int connections, Duration shutdownTimeout) {
+        ExecutorService delegate = null;
+        if (mode == Mode.VIRTUAL) {
+            delegate = newVirtualThreadPerTaskExecutor();
+            if (delegate == null) {
+                logger.warn("Virtual threads are not available on Java {}, using a pool of {} platform threads",
+                        Runtime.version().feature(), poolSize);
+            }
+        }
+        if (delegate == null) {
+            delegate = Executors.newFixedThreadPool(poolSize, new CustomizableThreadFactory(name + "-task-"));
+        }
+        return new BoundedTaskExecutor(name, delegate, connections, shutdownTimeout);
+    }
+
+    //looked up reflectively so the code compiles on Java 17, a native image has to be told to keep the method
+    static class Hints implements RuntimeHintsRegistrar {
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            hints.reflection().registerType(Executors.class, MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        queued.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                //waiting here instead of in the caller keeps submission non blocking, and is cheap on a virtual thread
+                connections.acquireUninterruptibly();
+                queued.decrementAndGet();
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                    connections.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            //never queued, e.g. because the executor is shutting down
+            queued.decrementAndGet();
+            throw new TaskRejectedException("Executor " + name + " did not accept " + task, e);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("items.executor.active", active, AtomicInteger::get)
+                .description("Tasks running on the executor")
+                .tag("executor", name)
+                .register(registry);
+        Gauge.builder("items.executor.queued", queued, AtomicInteger::get)
+                .description("Tasks waiting for a thread or a connection permit")
+                .tag("executor", name)
+                .register(registry);
+        Gauge.builder("items.executor.connections.available", connections, Semaphore::availablePermits)
+                .description("Connection permits not held by a running task")
+                .tag("executor", name)
+                .register(registry);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        delegate.shutdown();
+        if (!delegate.awaitTermination(shutdownTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            logger.warn("Tasks still running after {}, interrupting them", shutdownTimeout);
+            delegate.shutdownNow();
+        }
+    }
+}
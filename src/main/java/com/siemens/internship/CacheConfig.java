@@ -0,0 +1,10 @@
+package com.siemens.internship;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+//the caches themselves are set up from spring.cache.* in application.properties
+@Configuration
+@EnableCaching
+public class CacheConfig {
+}
@@ -0,0 +1,45 @@
+package com.siemens.internship;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+
+/**
+ * The database's current time. lastModified, processedAt and the processing mark are compared with each other across
+ * every node, so they are all taken from the one clock the nodes share instead of each node's own; the queries that
+ * set them in SQL use INSTANT, which is the same clock.
+ * Inside a transaction the time is read once and kept until it ends, like CURRENT_TIMESTAMP itself, which is the time
+ * the transaction started. A chunk of items written in one transaction costs one extra select, not one per item.
+ */
+@Component
+public class DatabaseClock {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    public Instant now() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return query();
+        }
+        Instant now = (Instant) TransactionSynchronizationManager.getResource(this);
+        if (now == null) {
+            now = query();
+            TransactionSynchronizationManager.bindResource(this, now);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResource(DatabaseClock.this);
+                }
+            });
+        }
+        return now;
+    }
+
+    private Instant query() {
+        return jdbcTemplate.queryForObject("SELECT CURRENT_TIMESTAMP", OffsetDateTime.class).toInstant();
+    }
+}
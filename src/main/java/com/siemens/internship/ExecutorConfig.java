@@ -0,0 +1,80 @@
+package com.siemens.internship;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.AsyncAnnotationBeanPostProcessor;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.time.Duration;
+
+//scheduled tasks, e.g. the item change relay, run on the scheduler Spring Boot configures
+@Configuration
+@EnableScheduling
+@ImportRuntimeHints(BoundedTaskExecutor.Hints.class)
+public class ExecutorConfig {
+    static final String PROCESSING_EXECUTOR = "processingTaskExecutor";
+    static final String PROCESSOR_EXECUTOR = "processorTaskExecutor";
+
+    //registered under the names Spring looks up for its own task executor, used by async requests and @Async
+    @Primary
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME,
+            AsyncAnnotationBeanPostProcessor.DEFAULT_TASK_EXECUTOR_BEAN_NAME})
+    public BoundedTaskExecutor applicationTaskExecutor(
+            @Value("${items.executor.mode:platform}") BoundedTaskExecutor.Mode mode,
+            @Value("${items.executor.pool-size:10}") int poolSize,
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int connections,
+            @Value("${items.executor.shutdown-timeout:30s}") Duration shutdownTimeout) {
+        return BoundedTaskExecutor.create("item", mode, poolSize, connections, shutdownTimeout);
+    }
+
+    /**
+     * Bulkhead for item processing: its tasks never hold more than items.processing.max-connections connections, so
+     * however many runs are going the rest of the pool stays free for the CRUD endpoints.
+     * A pipeline run holds two connections at once, its fetch and persist stages, and its persist stage waits for its
+     * fetch stage. Every run that may go at once gets its two, so persist stages can't take all the permits, or all the
+     * threads, and leave their fetch stages waiting forever. It has to leave at least one connection of the pool to
+     * the requests.
+     */
+    @Bean(PROCESSING_EXECUTOR)
+    public BoundedTaskExecutor processingTaskExecutor(
+            @Value("${items.executor.mode:platform}") BoundedTaskExecutor.Mode mode,
+            @Value("${items.processing.executor.pool-size:6}") int poolSize,
+            @Value("${items.processing.max-connections:4}") int connections,
+            @Value("${items.processing.max-concurrent-runs:2}") int maxConcurrentRuns,
+            @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolConnections,
+            @Value("${items.executor.shutdown-timeout:30s}") Duration shutdownTimeout) {
+        if (connections < 2 * maxConcurrentRuns) {
+            throw new IllegalArgumentException("items.processing.max-connections must be at least twice "
+                    + "items.processing.max-concurrent-runs " + maxConcurrentRuns + ", was " + connections);
+        }
+        if (mode == BoundedTaskExecutor.Mode.PLATFORM && poolSize < 2 * maxConcurrentRuns) {
+            throw new IllegalArgumentException("items.processing.executor.pool-size must be at least twice "
+                    + "items.processing.max-concurrent-runs " + maxConcurrentRuns + ", was " + poolSize);
+        }
+        if (connections >= poolConnections) {
+            throw new IllegalArgumentException("items.processing.max-connections must be below the pool size "
+                    + poolConnections + ", was " + connections);
+        }
+        return BoundedTaskExecutor.create("processing", mode, poolSize, connections, shutdownTimeout);
+    }
+
+    /**
+     * Threads for the workers of processing pipelines, which transform items without touching the database.
+     * It has items.processing.max-workers threads for all runs together, and as many permits, so virtual mode is
+     * capped the same way.
+     */
+    @Bean(PROCESSOR_EXECUTOR)
+    public BoundedTaskExecutor processorTaskExecutor(
+            @Value("${items.executor.mode:platform}") BoundedTaskExecutor.Mode mode,
+            @Value("${items.processing.max-workers:4}") int maxWorkers,
+            @Value("${items.executor.shutdown-timeout:30s}") Duration shutdownTimeout) {
+        if (maxWorkers < 1) {
+            throw new IllegalArgumentException("items.processing.max-workers must be at least 1, was " + maxWorkers);
+        }
+        return BoundedTaskExecutor.create("processor", mode, maxWorkers, maxWorkers, shutdownTimeout);
+    }
+}
@@ -2,8 +2,10 @@ package com.siemens.internship;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
+@ImportRuntimeHints(EmailValidator.Hints.class)
 public class InternshipApplication {
 
 	public static void main(String[] args) {
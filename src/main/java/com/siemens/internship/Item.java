@@ -1,24 +1,45 @@
 package com.siemens.internship;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
 
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.Email;
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.springframework.beans.factory.annotation.Autowired;
 
+import java.time.Instant;
+
+//every filter of the item list has an index, ending in id where the list is read in id order
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_item_status", columnList = "status, id"),
+        @Index(name = "idx_item_email", columnList = "email"),
+        @Index(name = "idx_item_name", columnList = "name"),
+        @Index(name = "idx_item_last_modified", columnList = "last_modified")
+})
+@EntityListeners(Item.Timestamps.class)
 @Getter
 @Setter
-@AllArgsConstructor
 @NoArgsConstructor
 public class Item {
+    //ids come from a pooled sequence, one round trip reserves a block of ids so batched inserts don't wait on it
+    //the spring data id is for the reactive repository, which doesn't read JPA annotations
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @org.springframework.data.annotation.Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_seq")
+    @SequenceGenerator(name = "item_seq", sequenceName = "item_seq", allocationSize = 50)
     private Long id;
     private String name;
     private String description;
@@ -27,4 +48,38 @@ public class Item {
 
     @Email(message="Invalid email format")
     private String email;
-}
\ No newline at end of file
+
+    //optimistic lock, bumped by every write and exposed to clients as the ETag
+    @Version
+    private Long version;
+
+    //when a client last created or changed the item, processing doesn't move it
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Column(nullable = false)
+    private Instant lastModified;
+
+    //when the default processing last marked the item, it needs processing again once lastModified is later
+    //custom processors don't set it, so the items they change are still picked up by the next incremental run
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private Instant processedAt;
+
+    public Item(Long id, String name, String description, String status, String email) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.status = status;
+        this.email = email;
+    }
+
+    //new items are stamped with the database's time, like every other write of lastModified and processedAt
+    //hibernate creates the listener through spring, which injects the clock
+    static class Timestamps {
+        @Autowired
+        private DatabaseClock clock;
+
+        @PrePersist
+        void onCreate(Item item) {
+            item.setLastModified(clock.now());
+        }
+    }
+}
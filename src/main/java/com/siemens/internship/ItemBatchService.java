@@ -0,0 +1,262 @@
+package com.siemens.internship;
+
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import jakarta.validation.constraints.Email;
+import jakarta.validation.metadata.BeanDescriptor;
+import jakarta.validation.metadata.PropertyDescriptor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Creates, updates and deletes many items per request.
+ * Every element is validated on its own and the valid ones are written in chunks, one transaction per chunk, so
+ * Hibernate can batch the statements. A chunk that fails is retried element by element, and every element gets its
+ * own result, whether it was written, rejected or failed. The changes of a chunk reach the outbox in its transaction.
+ */
+@Service
+public class ItemBatchService {
+    private static final Logger logger = LogManager.getLogger(ItemBatchService.class);
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private TransactionOperations transactionOperations;
+
+    @Autowired
+    private Validator validator;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private ItemOutbox outbox;
+
+    @Autowired
+    private DatabaseClock clock;
+
+    @Value("${items.batch.chunk-size:500}")
+    private int chunkSize;
+
+    //looked up from the validator's metadata on first use
+    private volatile Boolean onlyEmailConstrained;
+
+    //inserts every valid item, ids and versions in the input are ignored
+    public List<BatchResult> createAll(Iterator<Item> items) {
+        return inChunks(items, false, this::createChunk);
+    }
+
+    //overwrites every valid item that exists, an item that carries a version is only updated at that version
+    public List<BatchResult> updateAll(Iterator<Item> items) {
+        return inChunks(items, true, this::updateChunk);
+    }
+
+    public List<BatchResult> deleteAll(List<Long> ids) {
+        List<BatchResult> results = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += chunkSize) {
+            List<Long> chunk = ids.subList(from, Math.min(from + chunkSize, ids.size()));
+            results.addAll(deleteChunk(from, chunk));
+        }
+        return results;
+    }
+
+    //validates each element, then hands the valid ones to the writer a chunk at a time
+    private List<BatchResult> inChunks(Iterator<Item> items, boolean idRequired, Function<List<Element>, List<BatchResult>> writer) {
+        List<BatchResult> results = new ArrayList<>();
+        List<Element> chunk = new ArrayList<>(chunkSize);
+        int index = 0;
+        while (items.hasNext()) {
+            Item item = items.next();
+            List<String> errors = validate(item, idRequired);
+            if (errors.isEmpty()) {
+                chunk.add(new Element(index, item));
+            } else {
+                results.add(BatchResult.error(index, item == null ? null : item.getId(), BatchResult.Status.INVALID, errors));
+            }
+            if (chunk.size() == chunkSize) {
+                results.addAll(writer.apply(chunk));
+                chunk = new ArrayList<>(chunkSize);
+            }
+            index++;
+        }
+        if (!chunk.isEmpty()) {
+            results.addAll(writer.apply(chunk));
+        }
+        results.sort(Comparator.comparingInt(BatchResult::index));
+        return results;
+    }
+
+    //a valid item gets neither a violation set nor an error list when @Email is the only constraint Item has
+    List<String> validate(Item item, boolean idRequired) {
+        if (item == null) {
+            return List.of("item is required");
+        }
+        boolean idMissing = idRequired && item.getId() == null;
+        if (!idMissing && onlyEmailConstrained() && EmailValidator.isValid(item.getEmail())) {
+            return List.of();
+        }
+        List<String> errors = new ArrayList<>();
+        if (idMissing) {
+            errors.add("id: is required");
+        }
+        for (ConstraintViolation<Item> violation : validator.validate(item)) {
+            errors.add(violation.getPropertyPath() + ": " + violation.getMessage());
+        }
+        return errors;
+    }
+
+    private boolean onlyEmailConstrained() {
+        Boolean only = onlyEmailConstrained;
+        if (only == null) {
+            only = onlyEmailConstrained(validator.getConstraintsForClass(Item.class));
+            onlyEmailConstrained = only;
+        }
+        return only;
+    }
+
+    //whether EmailValidator.isValid on the email alone says if an item is valid, true as long as Item has nothing but
+    //@Email on its email, without regexp or groups
+    static boolean onlyEmailConstrained(BeanDescriptor item) {
+        if (item.hasConstraints() || item.getConstrainedProperties().size() != 1) {
+            return false;
+        }
+        PropertyDescriptor email = item.getConstraintsForProperty("email");
+        if (email == null || email.isCascaded() || !email.getConstrainedContainerElementTypes().isEmpty()
+                || email.getConstraintDescriptors().size() != 1) {
+            return false;
+        }
+        return email.getConstraintDescriptors().iterator().next().getAnnotation() instanceof Email annotation
+                && ".*".equals(annotation.regexp()) && annotation.flags().length == 0 && annotation.groups().length == 0;
+    }
+
+    private List<BatchResult> createChunk(List<Element> chunk) {
+        return writeChunk(chunk, elements -> {
+            //also clears what a rolled back attempt assigned
+            elements.forEach(element -> {
+                element.item().setId(null);
+                element.item().setVersion(null);
+            });
+            List<Item> saved = itemRepository.saveAll(elements.stream().map(Element::item).toList());
+            outbox.savedAll(saved);
+            List<BatchResult> results = new ArrayList<>(elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                results.add(BatchResult.of(elements.get(i).index(), saved.get(i), BatchResult.Status.CREATED));
+            }
+            return results;
+        });
+    }
+
+    private List<BatchResult> updateChunk(List<Element> chunk) {
+        List<BatchResult> results = writeChunk(chunk, elements -> {
+            //one query loads every item of the chunk, the changes are flushed as one batch
+            Map<Long, Item> existing = itemRepository.findAllById(elements.stream().map(e -> e.item().getId()).toList())
+                    .stream()
+                    .collect(Collectors.toMap(Item::getId, Function.identity()));
+            List<BatchResult> chunkResults = new ArrayList<>(elements.size());
+            List<Element> updated = new ArrayList<>();
+            Set<Long> touched = new HashSet<>();
+            for (Element element : elements) {
+                Item item = element.item();
+                Item stored = existing.get(item.getId());
+                if (stored == null) {
+                    chunkResults.add(BatchResult.error(element.index(), item.getId(), BatchResult.Status.NOT_FOUND, List.of()));
+                } else if (item.getVersion() != null
+                        && (!item.getVersion().equals(stored.getVersion()) || touched.contains(item.getId()))) {
+                    //also when an earlier element of this chunk already moved the item past that version
+                    chunkResults.add(BatchResult.error(element.index(), item.getId(), BatchResult.Status.CONFLICT,
+                            List.of("version: is " + stored.getVersion())));
+                } else {
+                    touched.add(item.getId());
+                    stored.setName(item.getName());
+                    stored.setDescription(item.getDescription());
+                    stored.setStatus(item.getStatus());
+                    stored.setEmail(item.getEmail());
+                    stored.setLastModified(clock.now());
+                    updated.add(new Element(element.index(), stored));
+                }
+            }
+            //flushing here bumps the versions before they are reported
+            itemRepository.flush();
+            outbox.savedAll(updated.stream().map(Element::item).toList());
+            updated.forEach(element -> chunkResults.add(BatchResult.of(element.index(), element.item(), BatchResult.Status.UPDATED)));
+            return chunkResults;
+        });
+        evict(chunk.stream().map(element -> element.item().getId()).toList());
+        return results;
+    }
+
+    private List<BatchResult> deleteChunk(int offset, List<Long> ids) {
+        List<BatchResult> results = new ArrayList<>(ids.size());
+        List<Long> existing;
+        try {
+            existing = transactionOperations.execute(status -> {
+                List<Long> found = itemRepository.findExistingIds(ids.stream().filter(Objects::nonNull).toList());
+                itemRepository.deleteAllByIdInBatch(found);
+                outbox.deletedAll(found);
+                return found;
+            });
+        } catch (RuntimeException e) {
+            logger.error("Deleting a chunk of {} items failed", ids.size(), e);
+            for (int i = 0; i < ids.size(); i++) {
+                results.add(BatchResult.error(offset + i, ids.get(i), BatchResult.Status.FAILED, List.of(String.valueOf(e.getMessage()))));
+            }
+            return results;
+        }
+        Set<Long> deleted = new HashSet<>(existing);
+        for (int i = 0; i < ids.size(); i++) {
+            Long id = ids.get(i);
+            //a repeated id is only deleted once
+            BatchResult.Status status = deleted.remove(id) ? BatchResult.Status.DELETED : BatchResult.Status.NOT_FOUND;
+            results.add(BatchResult.error(offset + i, id, status, List.of()));
+        }
+        evict(existing);
+        return results;
+    }
+
+    //writes the chunk in one transaction, or element by element if that fails
+    private List<BatchResult> writeChunk(List<Element> chunk, Function<List<Element>, List<BatchResult>> write) {
+        try {
+            return transactionOperations.execute(status -> write.apply(chunk));
+        } catch (RuntimeException e) {
+            logger.warn("Batch chunk of {} items failed, retrying them one by one", chunk.size(), e);
+            List<BatchResult> results = new ArrayList<>(chunk.size());
+            for (Element element : chunk) {
+                try {
+                    results.addAll(transactionOperations.execute(status -> write.apply(List.of(element))));
+                } catch (RuntimeException elementFailure) {
+                    results.add(BatchResult.error(element.index(), element.item().getId(), BatchResult.Status.FAILED,
+                            List.of(String.valueOf(elementFailure.getMessage()))));
+                }
+            }
+            return results;
+        }
+    }
+
+    private void evict(List<Long> ids) {
+        Cache cache = cacheManager.getCache(ItemService.ITEM_CACHE);
+        if (cache != null) {
+            ids.forEach(cache::evict);
+        }
+    }
+
+    private record Element(int index, Item item) {
+    }
+}
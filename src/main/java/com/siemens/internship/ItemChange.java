@@ -0,0 +1,60 @@
+package com.siemens.internship;
+
+import com.fasterxml.jackson.annotation.JsonRawValue;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.DynamicUpdate;
+
+import java.time.Instant;
+
+/**
+ * One row of the item outbox: a create, update or delete, written in the same transaction as the change itself.
+ * Once committed, the relay gives every change the next position; consumers follow the changes in position order and
+ * resume after the last position they have seen.
+ */
+@Entity
+@DynamicUpdate
+@Table(indexes = @Index(name = "idx_item_change_occurred_at", columnList = "occurred_at"))
+@Getter
+@Setter
+@NoArgsConstructor
+public class ItemChange {
+    //STATUS is one change for many items, see ItemStatusChange
+    public enum Type { SAVED, DELETED, STATUS }
+
+    //pooled, seqs of different nodes and transactions overtake each other, the order is the position
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "item_change_seq")
+    @SequenceGenerator(name = "item_change_seq", sequenceName = "item_change_seq", allocationSize = 50)
+    private Long seq;
+    //null until the relay sees the change committed, unique so two nodes cannot hand out the same one
+    @Column(unique = true)
+    private Long position;
+    private Long itemId;
+    @Enumerated(EnumType.STRING)
+    private Type type;
+    //the item as json after the change, null for deletes, an ItemStatusChange for status changes
+    @Lob
+    @JsonRawValue
+    private String item;
+    private Instant occurredAt;
+
+    public ItemChange(Long itemId, Type type, String item) {
+        this.itemId = itemId;
+        this.type = type;
+        this.item = item;
+        this.occurredAt = Instant.now();
+    }
+}
@@ -0,0 +1,14 @@
+package com.siemens.internship;
+
+import java.util.List;
+
+/**
+ * Receives the item changes committed on any node, in seq order, from the {@link ItemChangeRelay}.
+ * Every Spring bean implementing it is called on the relay thread, so it should hand slow work off.
+ * Listeners get the changes written after the application started, at most once: an exception is logged and the
+ * batch is not delivered again.
+ */
+@FunctionalInterface
+public interface ItemChangeListener {
+    void onChanges(List<ItemChange> changes);
+}
@@ -0,0 +1,188 @@
+package com.siemens.internship;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tails the item outbox and hands every batch of new changes to the {@link ItemChangeListener} beans and to the
+ * server-sent event streams of the consumers.
+ * A transaction can commit after a later one, so changes are not relayed by seq but by position, which each poll gives
+ * the changes committed since the last one. Positions are only handed out after the last committed one and are unique,
+ * so a node that races another one for the same positions rolls back and no position ever shows up behind the relay.
+ * A consumer that starts from an older position first catches up from the outbox, a batch at a time.
+ */
+@Component
+public class ItemChangeRelay {
+    private static final Logger logger = LogManager.getLogger(ItemChangeRelay.class);
+
+    @Autowired
+    private ItemChangeRepository changeRepository;
+
+    @Autowired
+    private TransactionOperations transactionOperations;
+
+    @Autowired(required = false)
+    private List<ItemChangeListener> listeners = List.of();
+
+    @Value("${items.changes.batch-size:500}")
+    private int batchSize;
+
+    @Value("${items.changes.retention:7d}")
+    private Duration retention;
+
+    @Value("${items.changes.sse-timeout:30m}")
+    private Duration sseTimeout;
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    //last position relayed, negative until the first poll
+    private volatile long cursor = -1;
+
+    //streams the changes after since, or the ones relayed from now on if since is null
+    public SseEmitter subscribe(Long since) {
+        return subscribe(new SseEmitter(sseTimeout.toMillis()), since);
+    }
+
+    SseEmitter subscribe(SseEmitter emitter, Long since) {
+        Subscriber subscriber = new Subscriber(emitter, since == null ? -1 : since);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    @Scheduled(fixedDelayString = "${items.changes.poll-interval:500}")
+    public void relay() {
+        if (cursor < 0) {
+            cursor = changeRepository.findLastPosition();
+        }
+        position();
+        List<ItemChange> batch;
+        do {
+            batch = changeRepository.findAfter(cursor, Limit.of(batchSize));
+            if (batch.isEmpty()) {
+                break;
+            }
+            long from = cursor;
+            cursor = batch.get(batch.size() - 1).getPosition();
+            notifyListeners(batch);
+            for (Subscriber subscriber : subscribers) {
+                catchUp(subscriber, from);
+                send(subscriber, batch);
+            }
+        } while (batch.size() == batchSize);
+        //subscribers that joined behind the relay while there was nothing new
+        for (Subscriber subscriber : subscribers) {
+            catchUp(subscriber, cursor);
+        }
+    }
+
+    //changes are kept for items.changes.retention, a consumer that falls further behind has to read the items again
+    @Scheduled(fixedDelayString = "${items.changes.purge-interval:3600000}")
+    public void purge() {
+        int purged = changeRepository.deleteOlderThan(Instant.now().minus(retention));
+        if (purged > 0) {
+            logger.info("Purged {} item changes older than {}", purged, retention);
+        }
+    }
+
+    //gives the committed changes without a position the next ones, in seq order, a batch per transaction
+    //every node does this, one that loses the race for a position to another rolls back and leaves it to the winner
+    private void position() {
+        try {
+            int positioned;
+            do {
+                positioned = transactionOperations.execute(status -> {
+                    long last = changeRepository.findLastPosition();
+                    List<ItemChange> changes = changeRepository.findUnpositioned(Limit.of(batchSize));
+                    for (ItemChange change : changes) {
+                        change.setPosition(++last);
+                    }
+                    return changes.size();
+                });
+            } while (positioned == batchSize);
+        } catch (DataIntegrityViolationException | ConcurrencyFailureException e) {
+            //the changes already positioned are relayed, the rest on the next poll
+            logger.debug("Another node positioned the same item changes", e);
+        }
+    }
+
+    private void notifyListeners(List<ItemChange> batch) {
+        for (ItemChangeListener listener : listeners) {
+            try {
+                listener.onChanges(batch);
+            } catch (RuntimeException e) {
+                logger.error("Item change listener {} failed on changes {} to {}", listener,
+                        batch.get(0).getPosition(), batch.get(batch.size() - 1).getPosition(), e);
+            }
+        }
+    }
+
+    //sends what the subscriber missed up to the given position
+    private void catchUp(Subscriber subscriber, long until) {
+        if (subscriber.position < 0) {
+            subscriber.position = until;
+        }
+        while (subscriber.position < until && subscribers.contains(subscriber)) {
+            List<ItemChange> batch = changeRepository.findBetween(subscriber.position, until, Limit.of(batchSize));
+            if (batch.isEmpty()) {
+                subscriber.position = until;
+                return;
+            }
+            send(subscriber, batch);
+        }
+    }
+
+    //writes the batch as one event per change in a single send, skipping what the subscriber already has
+    private void send(Subscriber subscriber, List<ItemChange> batch) {
+        Set<ResponseBodyEmitter.DataWithMediaType> events = new LinkedHashSet<>();
+        long last = subscriber.position;
+        for (ItemChange change : batch) {
+            if (change.getPosition() > subscriber.position) {
+                events.addAll(SseEmitter.event().id(String.valueOf(change.getPosition())).name("change").data(change).build());
+                last = change.getPosition();
+            }
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+        try {
+            subscriber.emitter.send(events);
+            subscriber.position = last;
+        } catch (IOException | IllegalStateException e) {
+            //the consumer went away, it resumes with Last-Event-ID
+            subscribers.remove(subscriber);
+            logger.debug("Dropped an item change stream at position {}", subscriber.position, e);
+        }
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        //last position sent, only touched by the relay thread once subscribed
+        private long position;
+
+        Subscriber(SseEmitter emitter, long position) {
+            this.emitter = emitter;
+            this.position = position;
+        }
+    }
+}
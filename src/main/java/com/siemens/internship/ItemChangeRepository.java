@@ -0,0 +1,33 @@
+package com.siemens.internship;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+public interface ItemChangeRepository extends JpaRepository<ItemChange, Long> {
+    //the next changes after the position, in position order
+    @Query("SELECT c FROM ItemChange c WHERE c.position > :after ORDER BY c.position")
+    List<ItemChange> findAfter(@Param("after") long after, Limit limit);
+
+    //changes already handed out, for a consumer catching up
+    @Query("SELECT c FROM ItemChange c WHERE c.position > :after AND c.position <= :until ORDER BY c.position")
+    List<ItemChange> findBetween(@Param("after") long after, @Param("until") long until, Limit limit);
+
+    @Query("SELECT COALESCE(MAX(c.position), 0) FROM ItemChange c")
+    long findLastPosition();
+
+    //committed changes the relay has not positioned yet, oldest seq first
+    @Query("SELECT c FROM ItemChange c WHERE c.position IS NULL ORDER BY c.seq")
+    List<ItemChange> findUnpositioned(Limit limit);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ItemChange c WHERE c.occurredAt < :before")
+    int deleteOlderThan(@Param("before") Instant before);
+}
@@ -1,75 +1,287 @@
 package com.siemens.internship;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
 import jakarta.validation.Valid;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/api/items")
 public class ItemController {
+    private static final Logger logger = LogManager.getLogger(ItemController.class);
 
     @Autowired
     private ItemService itemService;
 
-    //gets all items from db
+    @Autowired
+    private ItemBatchService itemBatchService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ItemChangeRelay changeRelay;
+
+    @Value("${items.page.default-size:100}")
+    private int defaultPageSize;
+
+    @Value("${items.page.max-size:1000}")
+    private int maxPageSize;
+
+    //when a client should try a run again that the database being unavailable stopped
+    @Value("${items.processing.retry-after:30s}")
+    private Duration processingRetryAfter;
+
+    //CURSOR_HEADER carries the id to pass as "after" to fetch the next page, absent on the last page
+    static final String CURSOR_HEADER = "X-Next-Cursor";
+
+    //gets one page of items ordered by id, starting after the given cursor
+    //status, statusNot, email and namePrefix filter the items, the cursor works the same with or without them
+    //fields, e.g. fields=name,status, only returns those fields of each item, and the id
     @GetMapping
-    public ResponseEntity<List<Item>> getAllItems() {
-        return new ResponseEntity<>(itemService.findAll(), HttpStatus.OK);
+    public ResponseEntity<List<?>> getAllItems(@RequestParam(required = false) Long after,
+                                               @RequestParam(required = false) Integer limit,
+                                               @RequestParam(required = false) String status,
+                                               @RequestParam(required = false) String statusNot,
+                                               @RequestParam(required = false) String email,
+                                               @RequestParam(required = false) String namePrefix,
+                                               @RequestParam(required = false) String fields) {
+        int size = limit == null ? defaultPageSize : limit;
+        if (size <= 0 || size > maxPageSize) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+        ItemFilter filter = new ItemFilter(status, statusNot, email, namePrefix);
+        ItemFields itemFields = parseFields(fields);
+        if (itemFields == null) {
+            return page(itemService.findPage(filter, after, size), size, Item::getId);
+        }
+        return page(itemService.findPage(filter, after, size, itemFields), size, values -> (Long) values.get("id"));
+    }
+
+    //id, name and status of one page of items, the cheapest way to list them
+    @GetMapping("/summaries")
+    public ResponseEntity<List<?>> getItemSummaries(@RequestParam(required = false) Long after,
+                                                    @RequestParam(required = false) Integer limit) {
+        int size = limit == null ? defaultPageSize : limit;
+        if (size <= 0 || size > maxPageSize) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+        return page(itemService.findSummaryPage(after, size), size, ItemSummary::id);
+    }
+
+    //a full page carries the cursor of the next one
+    private static <T> ResponseEntity<List<?>> page(List<T> page, int size, Function<T, Long> id) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.size() == size) {
+            response.header(CURSOR_HEADER, String.valueOf(id.apply(page.get(page.size() - 1))));
+        }
+        return response.body(page);
+    }
+
+    //streams all items as newline delimited json, rows are written as they are read from the db
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllItems() {
+        StreamingResponseBody body = out -> itemService.forEach(item -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(item));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    //streams item changes as server-sent events, each with its position as id
+    //starts after since, or from now on; a reconnecting EventSource resumes after its Last-Event-ID instead
+    @GetMapping(value = "/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestParam(required = false) Long since,
+                                    @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return changeRelay.subscribe(lastEventId != null ? lastEventId : since);
     }
 
-    //creates an item, validates input using @Valid
+    //creates an item, validates input using @Valid; ids and versions are assigned by the db
     @PostMapping
     public ResponseEntity<Item> createItem(@Valid @RequestBody Item item, BindingResult result) {
         if (result.hasErrors()) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
         }
+        item.setId(null);
+        item.setVersion(null);
         return new ResponseEntity<>(itemService.save(item), HttpStatus.CREATED);
     }
 
-    //finds an item by id
+    //finds an item by id, the ETag is its version; fields works as on the list
     @GetMapping("/{id}")
-    public ResponseEntity<Item> getItemById(@PathVariable Long id) {
+    public ResponseEntity<Object> getItemById(@PathVariable Long id, @RequestParam(required = false) String fields) {
+        ItemFields itemFields = parseFields(fields);
         return itemService.findById(id)
-                .map(ResponseEntity::ok)
+                .map(item -> withETag(ResponseEntity.ok(), item.getVersion())
+                        .body(itemFields == null ? (Object) item : itemFields.project(item)))
                 .orElse(ResponseEntity.notFound().build());
     }
 
-    //updates an item by id, validates input using @Valid
+    //updates an item by id, validates input using @Valid; with If-Match only the matching version is updated
     @PutMapping("/{id}")
-    public ResponseEntity<Item> updateItem(@PathVariable Long id,@Valid @RequestBody Item item, BindingResult result) {
+    public ResponseEntity<Item> updateItem(@PathVariable Long id, @Valid @RequestBody Item item, BindingResult result,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         if(result.hasErrors()) {
             return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
         }
-        if (itemService.findById(id).isPresent()) {
-            item.setId(id);
-            return new ResponseEntity<>(itemService.save(item), HttpStatus.OK);
-        } else {
-            return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        try {
+            return itemService.update(id, item, expectedVersion(ifMatch))
+                    .map(updated -> withETag(ResponseEntity.ok(), updated.getVersion()).body(updated))
+                    .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+        } catch (OptimisticLockingFailureException e) {
+            return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
         }
     }
 
-    //deletes an item by id
+    //deletes an item by id; with If-Match only the matching version is deleted
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteItem(@PathVariable Long id) {
-        if (itemService.findById(id).isPresent()) {
-            itemService.deleteById(id);
-            return new ResponseEntity<>(HttpStatus.OK);
-        }
-        else
+    public ResponseEntity<Void> deleteItem(@PathVariable Long id,
+                                           @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        try {
+            if (itemService.delete(id, expectedVersion(ifMatch))) {
+                return new ResponseEntity<>(HttpStatus.OK);
+            }
             return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+        } catch (OptimisticLockingFailureException e) {
+            return new ResponseEntity<>(HttpStatus.PRECONDITION_FAILED);
+        }
     }
 
-    //async process items
+    //creates many items, from a json array or one json item per line; each element gets its own result
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<BatchResult>> createItems(@RequestBody List<Item> items) {
+        return ResponseEntity.ok(itemBatchService.createAll(items.iterator()));
+    }
+
+    @PostMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<List<BatchResult>> createItemsFromLines(InputStream body) throws IOException {
+        return fromLines(body, itemBatchService::createAll);
+    }
+
+    //updates many items by id, an element that carries a version is only updated at that version
+    @PutMapping(value = "/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<BatchResult>> updateItems(@RequestBody List<Item> items) {
+        return ResponseEntity.ok(itemBatchService.updateAll(items.iterator()));
+    }
+
+    @PutMapping(value = "/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<List<BatchResult>> updateItemsFromLines(InputStream body) throws IOException {
+        return fromLines(body, itemBatchService::updateAll);
+    }
+
+    //deletes many items given a json array of ids
+    @DeleteMapping("/batch")
+    public ResponseEntity<List<BatchResult>> deleteItems(@RequestBody List<Long> ids) {
+        return ResponseEntity.ok(itemBatchService.deleteAll(ids));
+    }
+
+    //items are parsed lazily while the batch is written, a broken line ends the request but earlier chunks stay written
+    private ResponseEntity<List<BatchResult>> fromLines(InputStream body, Function<Iterator<Item>, List<BatchResult>> batch) throws IOException {
+        try (MappingIterator<Item> items = objectMapper.readerFor(Item.class).readValues(body)) {
+            return ResponseEntity.ok(batch.apply(items));
+        } catch (RuntimeException e) {
+            if (e instanceof RuntimeJsonMappingException || e.getCause() instanceof JsonProcessingException) {
+                return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+            }
+            throw e;
+        }
+    }
+
+    private static ResponseEntity.BodyBuilder withETag(ResponseEntity.BodyBuilder response, Long version) {
+        return version == null ? response : response.eTag(String.valueOf(version));
+    }
+
+    private static ItemFields parseFields(String fields) {
+        try {
+            return ItemFields.parse(fields);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    //reads the version out of an If-Match value, no header or "*" mean any version
+    private static Long expectedVersion(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.startsWith("W/")) {
+            tag = tag.substring(2);
+        }
+        tag = tag.replace("\"", "");
+        try {
+            return Long.valueOf(tag);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "If-Match must be an item version");
+        }
+    }
+
+    //async process items and answer with how many were processed and failed
+    //429 with Retry-After while the engine is running as many runs as it may
     @GetMapping("/process")
-    public CompletableFuture<ResponseEntity<List<Item>>> processItems() {
-        return itemService.processItemsAsync()
-                .thenApply(item->ResponseEntity.ok().body(item))
-                .exceptionally(ex->ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build());
+    public CompletableFuture<ResponseEntity<?>> processItems() {
+        try {
+            return itemService.processItemsAsync()
+                    .<ResponseEntity<?>>thenApply(summary->ResponseEntity.ok().body(summary))
+                    .exceptionally(this::processingFailed);
+        } catch (ProcessingRejectedException e) {
+            return CompletableFuture.completedFuture(processingFailed(e));
+        }
+    }
+
+    //a run that stopped part way, the items it processed before stay processed and the next run picks up the rest
+    //503 with Retry-After when the database was unavailable, 500 for anything else, both with a problem detail
+    private ResponseEntity<?> processingFailed(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof ProcessingRejectedException rejected) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(rejected.getRetryAfter().toSeconds()))
+                    .build();
+        }
+        if (cause instanceof TransientDataAccessException || cause instanceof RecoverableDataAccessException
+                || cause instanceof DataAccessResourceFailureException) {
+            logger.warn("Processing run stopped, the database is unavailable: {}", cause.toString());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(processingRetryAfter.toSeconds()))
+                    .body(ProblemDetail.forStatusAndDetail(HttpStatus.SERVICE_UNAVAILABLE,
+                            "Processing stopped because the database is unavailable, try again later"));
+        }
+        logger.error("Processing run failed: ", cause);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(ProblemDetail.forStatusAndDetail(HttpStatus.INTERNAL_SERVER_ERROR,
+                        "Processing failed, items processed before the failure stay processed"));
     }
 }
@@ -0,0 +1,51 @@
+package com.siemens.internship;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * A sparse fieldset of items, as given by ?fields=name,status.
+ * The id is always part of it since list pages continue after it, the fields keep the order of the item's json.
+ */
+public record ItemFields(List<String> names) {
+    static final List<String> ALL = List.of("id", "name", "description", "status", "email", "version", "lastModified", "processedAt");
+
+    //null if no fields are given, meaning whole items; throws IllegalArgumentException for unknown fields
+    public static ItemFields parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        Set<String> requested = Arrays.stream(fields.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toSet());
+        List<String> unknown = requested.stream().filter(name -> !ALL.contains(name)).sorted().toList();
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Unknown item fields " + unknown + ", expected some of " + ALL);
+        }
+        return new ItemFields(ALL.stream().filter(name -> name.equals("id") || requested.contains(name)).toList());
+    }
+
+    //the fields of an item that is already loaded, e.g. from the cache
+    public Map<String, Object> project(Item item) {
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (String name : names) {
+            values.put(name, switch (name) {
+                case "id" -> item.getId();
+                case "name" -> item.getName();
+                case "description" -> item.getDescription();
+                case "status" -> item.getStatus();
+                case "email" -> item.getEmail();
+                case "version" -> item.getVersion();
+                case "lastModified" -> item.getLastModified();
+                case "processedAt" -> item.getProcessedAt();
+                default -> throw new IllegalStateException("Unexpected item field " + name);
+            });
+        }
+        return values;
+    }
+}
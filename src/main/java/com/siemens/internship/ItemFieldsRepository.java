@@ -0,0 +1,12 @@
+package com.siemens.internship;
+
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.Map;
+
+//queries that select only some columns of the items, see ItemFieldsRepositoryImpl
+public interface ItemFieldsRepository {
+    //the given fields of at most limit items matching the specification, in id order
+    List<Map<String, Object>> findFields(Specification<Item> specification, ItemFields fields, int limit);
+}
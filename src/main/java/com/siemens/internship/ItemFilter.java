@@ -0,0 +1,46 @@
+package com.siemens.internship;
+
+import jakarta.persistence.criteria.Predicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Optional filters for the item list, a null field doesn't filter.
+ * Each one runs in the database on an indexed column instead of on the client after downloading every item.
+ */
+public record ItemFilter(String status, String statusNot, String email, String namePrefix) {
+    public static final ItemFilter NONE = new ItemFilter(null, null, null, null);
+
+    public boolean isEmpty() {
+        return status == null && statusNot == null && email == null && namePrefix == null;
+    }
+
+    //the matching items with an id greater than afterId
+    public Specification<Item> after(long afterId) {
+        return (root, query, cb) -> {
+            List<Predicate> predicates = new ArrayList<>();
+            predicates.add(cb.greaterThan(root.get("id"), afterId));
+            if (status != null) {
+                predicates.add(cb.equal(root.get("status"), status));
+            }
+            if (statusNot != null) {
+                //an item without a status doesn't have this one either
+                predicates.add(cb.or(cb.isNull(root.get("status")), cb.notEqual(root.get("status"), statusNot)));
+            }
+            if (email != null) {
+                predicates.add(cb.equal(root.get("email"), email));
+            }
+            if (namePrefix != null) {
+                //a prefix match can use the index on name, wildcards in the prefix are matched literally
+                predicates.add(cb.like(root.get("name"), escapeLike(namePrefix) + "%", '\\'));
+            }
+            return cb.and(predicates.toArray(Predicate[]::new));
+        };
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
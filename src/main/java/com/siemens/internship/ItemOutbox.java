@@ -0,0 +1,61 @@
+package com.siemens.internship;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Records item changes in the outbox. It only joins the transaction of the write it records, so a change is
+ * published if and only if it was committed; calling it without a transaction fails.
+ */
+@Component
+@Transactional(propagation = Propagation.MANDATORY)
+public class ItemOutbox {
+    @Autowired
+    private ItemChangeRepository changeRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    public void saved(Item item) {
+        savedAll(List.of(item));
+    }
+
+    public void savedAll(Collection<Item> items) {
+        changeRepository.saveAll(items.stream()
+                .map(item -> new ItemChange(item.getId(), ItemChange.Type.SAVED, toJson(item)))
+                .toList());
+    }
+
+    //one change for a whole chunk of items the set based processing path moved to the status, nothing if it is empty
+    public void statusChanged(String status, List<ItemVersion> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        changeRepository.save(new ItemChange(null, ItemChange.Type.STATUS, toJson(new ItemStatusChange(status, items))));
+    }
+
+    public void deleted(Long id) {
+        deletedAll(List.of(id));
+    }
+
+    public void deletedAll(Collection<Long> ids) {
+        changeRepository.saveAll(ids.stream()
+                .map(id -> new ItemChange(id, ItemChange.Type.DELETED, null))
+                .toList());
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(value + " cannot be written as json", e);
+        }
+    }
+}
@@ -0,0 +1,861 @@
+package com.siemens.internship;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Processes items in chunks instead of one future per row.
+ * When the processor only marks items as processed, a fixed number of lanes take the next chunk of ids from a shared
+ * keyset cursor and write each chunk with a single set based update, the entities are never loaded.
+ * The default run is incremental: it only claims items changed since the persisted {@link ProcessingMark}, so its cost
+ * follows how many items changed rather than the size of the table. With items.processing.partition-size set the id space
+ * is cut into partitions that runs lease through the shared {@link ProcessingLeases}, so runs on several nodes split
+ * the work between them instead of each doing all of it.
+ * Any other {@link ItemProcessor} runs in a three stage pipeline: one fetcher loads chunks, as many workers as the
+ * processor's concurrency, up to items.processing.max-workers, transform them, and one persister writes each chunk back in one transaction so Hibernate can
+ * send the updates as JDBC batches. The stages are joined by small bounded queues, so a slow stage holds the others
+ * back instead of the whole table piling up in memory.
+ * If a chunk fails to save its items are retried one by one, so a single bad row only costs itself. An item whose save
+ * fails with a transient error is tried again with exponential backoff, one that still fails is written to the
+ * {@link ProcessingFailure} dead-letter table with its cause, and the run goes on.
+ * Every chunk records how long it spent fetching, transforming and persisting in the items.processing.stage timer,
+ * and counts its items as processed, failed or skipped in items.processing.items.
+ */
+@Component
+public class ItemProcessingEngine {
+    static final String PROCESSED = "PROCESSED";
+
+    //the default processor, a pure status transition
+    static final ItemProcessor MARK_PROCESSED = item -> item.setStatus(PROCESSED);
+
+    //name of the high-water mark of the default transition
+    static final String CHANGES_MARK = "items";
+
+    //tells the next pipeline stage that no more chunks will come
+    private static final Chunk END = new Chunk(List.of(), List.of(), List.of());
+
+    private static final Logger logger = LogManager.getLogger(ItemProcessingEngine.class);
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    //processing writes are published like any other item write, see ItemChangeRelay
+    @Autowired
+    private ItemOutbox outbox;
+
+    @Autowired
+    private TransactionOperations transactionOperations;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Value("${items.processing.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${items.processing.parallelism:4}")
+    private int parallelism;
+
+    //processing has its own executor and connection budget, see ExecutorConfig
+    @Autowired
+    @Qualifier(ExecutorConfig.PROCESSING_EXECUTOR)
+    private BoundedTaskExecutor taskExecutor;
+
+    //pipeline workers run on an executor of their own, shared by every run, so a processor asking for more threads
+    //than that queues its chunks rather than starting threads of its own
+    @Autowired
+    @Qualifier(ExecutorConfig.PROCESSOR_EXECUTOR)
+    private BoundedTaskExecutor workerExecutor;
+
+    @Value("${items.processing.max-workers:4}")
+    private int maxWorkers;
+
+    //runs beyond this are rejected rather than slowing down every run and the rest of the application
+    @Value("${items.processing.max-concurrent-runs:2}")
+    private int maxConcurrentRuns;
+
+    @Value("${items.processing.retry-after:30s}")
+    private Duration retryAfter;
+
+    private final AtomicInteger activeRuns = new AtomicInteger();
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ProcessingMarkRepository markRepository;
+
+    @Autowired
+    private ProcessingFailureRepository failureRepository;
+
+    //attempts per item, including the first, when saving it fails with a transient error
+    @Value("${items.processing.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    //wait before the first retry, doubled for every further one up to max-backoff
+    @Value("${items.processing.retry.backoff:50ms}")
+    private Duration backoff;
+
+    @Value("${items.processing.retry.max-backoff:1s}")
+    private Duration maxBackoff;
+
+    @Autowired
+    private ProcessingLeases leases;
+
+    //lastModified is the database's time, so the mark and processedAt have to be too
+    @Autowired
+    private DatabaseClock clock;
+
+    //ids per partition of incremental runs, 0 for a single node that needs no leases
+    @Value("${items.processing.partition-size:0}")
+    private long partitionSize;
+
+    //how long a write may take to commit, items changed this long before a run started are looked at again
+    @Value("${items.processing.mark-lag:1m}")
+    private Duration markLag;
+
+    //marks the items changed since the last run as processed and completes with how many were processed and failed
+    //the items themselves are never read back, so a run over the whole table holds no more than a chunk of ids
+    public CompletableFuture<ProcessingSummary> processAll() {
+        return summarize(listener -> runChanged(Long.MIN_VALUE, false, listener));
+    }
+
+    //applies a processor to every item and completes with how many were processed and failed
+    //processed items aren't kept, a run holds no more than the chunks in its pipeline
+    public CompletableFuture<ProcessingSummary> processAll(ItemProcessor processor) {
+        return summarize(listener -> run(Long.MIN_VALUE, processor, false, listener));
+    }
+
+    private CompletableFuture<ProcessingSummary> summarize(Function<ChunkListener, CompletableFuture<Void>> run) {
+        LongAdder processed = new LongAdder();
+        LongAdder failed = new LongAdder();
+        return run.apply(result -> {
+            processed.add(result.processed());
+            failed.add(result.failed());
+        }).thenApply(v -> new ProcessingSummary(processed.sum(), failed.sum()));
+    }
+
+    /**
+     * Applies the processor to every item with an id greater than afterId.
+     * The listener is told about every finished chunk, from whichever thread finished it, and is asked before each new
+     * chunk whether the run was cancelled. Processed items are only handed to it when collectItems is set.
+     */
+    public CompletableFuture<Void> run(long afterId, ItemProcessor processor, boolean collectItems, ChunkListener listener) {
+        return admitted(() -> {
+            if (processor != MARK_PROCESSED) {
+                return new Pipeline(processor, new IdCursor(afterId, processor.chunkSize(), null), collectItems, listener).start();
+            }
+            return lanes(new IdCursor(afterId, chunkSize, null), collectItems, listener);
+        });
+    }
+
+    /**
+     * Marks the items with an id greater than afterId that changed since the high-water mark and weren't processed
+     * after their last change. Once the run completes without being cancelled or failing an item the mark moves to
+     * when the run started, less items.processing.mark-lag so that writes still committing at that time aren't skipped
+     * by the next run. A run with failed items leaves the mark, so the next run tries them again, and only them.
+     * Partitioned runs only process the partitions they get a lease on and keep a mark per partition besides the
+     * shared one, see {@link PartitionCursor}.
+     */
+    public CompletableFuture<Void> runChanged(long afterId, boolean collectItems, ChunkListener listener) {
+        return admitted(() -> {
+            Instant started = clock.now();
+            IdCursor cursor = partitionSize > 0
+                    ? new PartitionCursor(afterId, chunkSize, processedUntil(CHANGES_MARK))
+                    : new IdCursor(afterId, chunkSize, processedUntil(CHANGES_MARK));
+            return lanes(cursor, collectItems, listener)
+                    .whenComplete((v, e) -> cursor.releaseAll())
+                    .thenRun(() -> {
+                        if (!listener.isCancelled()) {
+                            cursor.advanceMarks(started.minus(markLag));
+                        }
+                    });
+        });
+    }
+
+    //starts the run if fewer than items.processing.max-concurrent-runs are going, throws ProcessingRejectedException if not
+    private CompletableFuture<Void> admitted(Supplier<CompletableFuture<Void>> run) {
+        int running;
+        do {
+            running = activeRuns.get();
+            if (running >= maxConcurrentRuns) {
+                throw new ProcessingRejectedException(running, retryAfter);
+            }
+        } while (!activeRuns.compareAndSet(running, running + 1));
+        try {
+            return run.get().whenComplete((v, e) -> activeRuns.decrementAndGet());
+        } catch (RuntimeException e) {
+            activeRuns.decrementAndGet();
+            throw e;
+        }
+    }
+
+    //how many items the next incremental run would process
+    public long countChanged() {
+        return itemRepository.countChangedSince(processedUntil(CHANGES_MARK));
+    }
+
+    private Instant processedUntil(String name) {
+        return markRepository.findById(name).map(ProcessingMark::getProcessedUntil).orElse(Instant.EPOCH);
+    }
+
+    private void advanceMark(String name, Instant processedUntil) {
+        try {
+            transactionOperations.executeWithoutResult(status -> {
+                ProcessingMark mark = markRepository.findById(name)
+                        .orElseGet(() -> new ProcessingMark(name, Instant.EPOCH));
+                //runs can finish out of order, the mark never moves back
+                if (mark.getProcessedUntil().isBefore(processedUntil)) {
+                    mark.setProcessedUntil(processedUntil);
+                    markRepository.save(mark);
+                }
+            });
+        } catch (DataAccessException e) {
+            //e.g. two first runs creating the mark at once, the next run just looks at a few more items
+            logger.warn("Could not move the processing mark {} to {}", name, processedUntil, e);
+        }
+    }
+
+    //name of one partition's mark, e.g. items:3
+    private static String partitionMark(long partition) {
+        return CHANGES_MARK + ":" + partition;
+    }
+
+    //partition marks the shared mark caught up with say nothing more, losing one only costs the next run a longer look
+    private void dropPartitionMarks(Instant processedUntil) {
+        try {
+            markRepository.deleteUpTo(CHANGES_MARK + ":", processedUntil);
+        } catch (DataAccessException e) {
+            logger.warn("Could not drop the processing partition marks up to {}", processedUntil, e);
+        }
+    }
+
+    private CompletableFuture<Void> lanes(IdCursor cursor, boolean collectItems, ChunkListener listener) {
+        //each lane keeps taking chunks until the cursor runs dry or the run is cancelled
+        CompletableFuture<?>[] lanes = new CompletableFuture[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            lanes[i] = CompletableFuture.runAsync(() -> drain(cursor, collectItems, listener), taskExecutor);
+        }
+        return CompletableFuture.allOf(lanes);
+    }
+
+    private void drain(IdCursor cursor, boolean collectItems, ChunkListener listener) {
+        List<Long> ids;
+        while (!listener.isCancelled() && !(ids = timed("fetch", cursor::next)).isEmpty()) {
+            finish(cursor, ids, markChunk(ids, collectItems, cursor.changedOnly()), collectItems, listener);
+        }
+    }
+
+    private void finish(IdCursor cursor, List<Long> ids, ChunkOutcome outcome, boolean collectItems, ChunkListener listener) {
+        count(ids.size(), outcome);
+        evict(ids);
+        deadLetter(outcome.failures(), listener.jobId());
+        long checkpoint = cursor.complete(ids, outcome.failed() > 0);
+        listener.onChunk(new ChunkResult(collectItems ? outcome.items() : List.of(),
+                outcome.processed(), outcome.failed(), checkpoint));
+    }
+
+    private <T> T timed(String stage, Supplier<T> work) {
+        return Timer.builder("items.processing.stage")
+                .tag("stage", stage)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(work);
+    }
+
+    //items that were claimed but neither processed nor failed were deleted in the meantime or needed no change
+    private void count(int claimed, ChunkOutcome outcome) {
+        int skipped = Math.max(0, claimed - outcome.processed() - outcome.failed());
+        meterRegistry.counter("items.processing.items", "outcome", "processed").increment(outcome.processed());
+        meterRegistry.counter("items.processing.items", "outcome", "failed").increment(outcome.failed());
+        meterRegistry.counter("items.processing.items", "outcome", "skipped").increment(skipped);
+    }
+
+    //the items are counted as failed either way, losing their dead letters only loses the details
+    private void deadLetter(List<ProcessingFailure> failures, String jobId) {
+        if (failures.isEmpty()) {
+            return;
+        }
+        failures.forEach(failure -> failure.setJobId(jobId));
+        try {
+            transactionOperations.executeWithoutResult(status -> failureRepository.saveAll(failures));
+        } catch (DataAccessException e) {
+            logger.error("Could not write {} processing failures, the first for item {}", failures.size(),
+                    failures.get(0).getItemId(), e);
+        }
+    }
+
+    /**
+     * Runs the write for one item, again after a backoff while it fails with a transient error, up to
+     * items.processing.retry.max-attempts times. The wait doubles with every attempt, with jitter so the lanes that
+     * hit the same contention don't all come back at once. An interrupted wait gives the item up.
+     * An optimistic locking failure is not retried: the item was changed since it was read, writing the same stale copy
+     * again would fail the same way every time while holding a connection permit.
+     */
+    private <T> T retried(Long itemId, Supplier<T> write) {
+        int attempt = 1;
+        while (true) {
+            try {
+                return write.get();
+            } catch (OptimisticLockingFailureException e) {
+                throw new ItemFailedException(attempt, e);
+            } catch (TransientDataAccessException | RecoverableDataAccessException e) {
+                if (attempt >= maxAttempts) {
+                    throw new ItemFailedException(attempt, e);
+                }
+                long ceiling = Math.min(maxBackoff.toMillis(), backoff.toMillis() << Math.min(attempt - 1, 20));
+                long wait = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+                logger.debug("Saving item {} failed on attempt {}, retrying in {} ms", itemId, attempt, wait, e);
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new ItemFailedException(attempt, e);
+                }
+                attempt++;
+            } catch (RuntimeException e) {
+                throw new ItemFailedException(attempt, e);
+            }
+        }
+    }
+
+    //records the item's failure after retried gave up on it
+    private static ProcessingFailure failure(Long itemId, RuntimeException e) {
+        logger.error("Error saving item {}: ", itemId, e);
+        return e instanceof ItemFailedException failed
+                ? new ProcessingFailure(itemId, failed.getCause(), failed.attempts)
+                : new ProcessingFailure(itemId, e, 1);
+    }
+
+    //the chunk was written behind the item cache's back
+    private void evict(List<Long> ids) {
+        Cache cache = cacheManager.getCache(ItemService.ITEM_CACHE);
+        if (cache != null) {
+            ids.forEach(cache::evict);
+        }
+    }
+
+    /**
+     * Updates the status of the chunk in one statement, reading it back only if the items are wanted.
+     * A chunk of changed items may have gaps, so it's updated by id instead of by range.
+     * The outbox gets one status change for the chunk in the same transaction, with the id and new version of every
+     * item, so consumers of the change stream can follow processing without reading the items.
+     */
+    ChunkOutcome markChunk(List<Long> ids, boolean collectItems, boolean changedOnly) {
+        try {
+            return transactionOperations.execute(status -> {
+                int updated = timed("persist", () -> changedOnly
+                        ? itemRepository.markChanged(ids, PROCESSED)
+                        : itemRepository.updateStatusInRange(ids.get(0), ids.get(ids.size() - 1), PROCESSED));
+                if (!collectItems) {
+                    if (updated > 0) {
+                        outbox.statusChanged(PROCESSED, itemRepository.findVersions(ids, PROCESSED));
+                    }
+                    return new ChunkOutcome(List.of(), updated, List.of());
+                }
+                List<Item> items = timed("fetch", () -> itemRepository.findAllById(ids));
+                if (updated > 0) {
+                    outbox.statusChanged(PROCESSED, items.stream()
+                            .filter(item -> PROCESSED.equals(item.getStatus()))
+                            .map(item -> new ItemVersion(item.getId(), item.getVersion()))
+                            .toList());
+                }
+                return new ChunkOutcome(items, items.size(), List.of());
+            });
+        } catch (RuntimeException e) {
+            logger.warn("Chunk of {} items starting at id {} failed, retrying items one by one", ids.size(), ids.get(0), e);
+            List<Item> processed = new ArrayList<>();
+            List<ProcessingFailure> failures = new ArrayList<>();
+            for (Long id : ids) {
+                try {
+                    Item item = retried(id, () -> markOne(id));
+                    //items deleted in the meantime are skipped, not failed
+                    if (item != null) {
+                        processed.add(item);
+                    }
+                } catch (RuntimeException ex) {
+                    failures.add(failure(id, ex));
+                }
+            }
+            return new ChunkOutcome(processed, processed.size(), failures);
+        }
+    }
+
+    //returns null if the item is gone
+    private Item markOne(Long id) {
+        return transactionOperations.execute(status -> itemRepository.findById(id)
+                .map(item -> {
+                    MARK_PROCESSED.process(item);
+                    item.setProcessedAt(clock.now());
+                    Item saved = itemRepository.save(item);
+                    //flushed first, so the outbox gets the version the write moved it to
+                    itemRepository.flush();
+                    outbox.saved(saved);
+                    return saved;
+                })
+                .orElse(null));
+    }
+
+    /**
+     * Saves a processed chunk in one transaction, falls back to saving item by item if that fails.
+     * Items that were deleted while the chunk was being processed are skipped instead of being inserted again.
+     * processedAt is left alone: it belongs to the default transition, and a custom processor setting it would keep
+     * the item from the next incremental run. Saved items go to the outbox in the same transaction.
+     */
+    ChunkOutcome persistChunk(Chunk chunk) {
+        try {
+            return transactionOperations.execute(status -> timed("persist", () -> {
+                //loading the rows first lets each save find them in the persistence context instead of selecting them
+                Set<Long> existing = itemRepository.findAllById(chunk.ids()).stream()
+                        .map(Item::getId)
+                        .collect(Collectors.toSet());
+                List<Item> present = chunk.items().stream()
+                        .filter(item -> existing.contains(item.getId()))
+                        .toList();
+                List<Item> saved = itemRepository.saveAll(present);
+                itemRepository.flush();
+                outbox.savedAll(saved);
+                return new ChunkOutcome(saved, saved.size(), chunk.failures());
+            }));
+        } catch (RuntimeException e) {
+            logger.warn("Chunk of {} items starting at id {} failed, saving items one by one", chunk.ids().size(), chunk.ids().get(0), e);
+            List<Item> saved = new ArrayList<>();
+            List<ProcessingFailure> failures = new ArrayList<>(chunk.failures());
+            for (Item item : chunk.items()) {
+                try {
+                    Item result = retried(item.getId(), () -> transactionOperations.execute(status ->
+                            itemRepository.findById(item.getId())
+                                    .map(existing -> {
+                                        Item updated = itemRepository.save(item);
+                                        itemRepository.flush();
+                                        outbox.saved(updated);
+                                        return updated;
+                                    })
+                                    .orElse(null)));
+                    if (result != null) {
+                        saved.add(result);
+                    }
+                } catch (RuntimeException ex) {
+                    failures.add(failure(item.getId(), ex));
+                }
+            }
+            return new ChunkOutcome(saved, saved.size(), failures);
+        }
+    }
+
+    public interface ChunkListener {
+        void onChunk(ChunkResult result);
+
+        //checked before each chunk is taken, a cancelled run stops once the chunks in flight are done
+        default boolean isCancelled() {
+            return false;
+        }
+
+        //the job the run belongs to, recorded with its dead letters
+        default String jobId() {
+            return null;
+        }
+    }
+
+    /**
+     * What happened to one chunk. The checkpoint is the highest id such that every chunk up to it has finished,
+     * so a run restarted after it neither skips nor repeats work, whichever order the chunks finish in.
+     */
+    public record ChunkResult(List<Item> items, int processed, int failed, long checkpoint) {
+    }
+
+    record ChunkOutcome(List<Item> items, int processed, List<ProcessingFailure> failures) {
+        int failed() {
+            return failures.size();
+        }
+    }
+
+    //a chunk on its way through the pipeline, failures are the items the processor threw on
+    record Chunk(List<Long> ids, List<Item> items, List<ProcessingFailure> failures) {
+    }
+
+    //an item given up on, after how many attempts
+    private static final class ItemFailedException extends RuntimeException {
+        private final int attempts;
+
+        ItemFailedException(int attempts, RuntimeException cause) {
+            super(cause);
+            this.attempts = attempts;
+        }
+    }
+
+    //hands out consecutive chunks of ids, shared by everything working on one run
+    private class IdCursor {
+        protected final int size;
+        //only items changed after this are handed out, every item if null
+        protected final Instant changedSince;
+        protected long lastId;
+        //first id to last id of every chunk handed out and not finished yet
+        protected final TreeMap<Long, Long> inFlight = new TreeMap<>();
+        private volatile boolean failures;
+
+        IdCursor(long afterId, int size, Instant changedSince) {
+            this.lastId = afterId;
+            this.size = size;
+            this.changedSince = changedSince;
+        }
+
+        boolean changedOnly() {
+            return changedSince != null;
+        }
+
+        synchronized List<Long> next() {
+            List<Long> ids = changedOnly()
+                    ? itemRepository.findChangedIdsAfter(lastId, changedSince, Limit.of(size))
+                    : itemRepository.findIdsAfter(lastId, Limit.of(size));
+            if (!ids.isEmpty()) {
+                lastId = ids.get(ids.size() - 1);
+                inFlight.put(ids.get(0), lastId);
+            }
+            return ids;
+        }
+
+        //marks the chunk as finished and returns the checkpoint
+        synchronized long complete(List<Long> ids, boolean failed) {
+            if (failed) {
+                failures = true;
+            }
+            inFlight.remove(ids.get(0));
+            return inFlight.isEmpty() ? lastId : inFlight.firstKey() - 1;
+        }
+
+        //moves the marks once the run is over, the items it failed keep them where they are
+        void advanceMarks(Instant processedUntil) {
+            if (!failures) {
+                advanceMark(CHANGES_MARK, processedUntil);
+            }
+        }
+
+        //gives back the leases still held once the run is over, however it ended
+        void releaseAll() {
+        }
+    }
+
+    /**
+     * Cursor over the changed items of the partitions this run gets a lease on, a partition being a range of
+     * items.processing.partition-size ids. A partition leased by another run is skipped, that run processes it.
+     * Chunks never straddle partitions, the lease is renewed before each further chunk and given back once the last
+     * chunk of the partition finished. The checkpoint moves past skipped partitions too, they are not this run's work.
+     * Every partition the run worked through without failures gets its own mark, which the next run looks for its
+     * changes from. The shared mark, which says where to look for changes at all, only moves as far as the partitions
+     * left to other runs or with failed items were processed; so of runs working side by side on different nodes,
+     * the one that finishes last moves it.
+     */
+    private final class PartitionCursor extends IdCursor {
+        private final String owner = leases.newOwner();
+        //partition chunks are being handed out from, null between partitions
+        private Long partition;
+        //chunks handed out and not finished yet, per leased partition
+        private final Map<Long, Integer> pending = new HashMap<>();
+        //leased partitions with nothing left to hand out
+        private final Set<Long> drained = new HashSet<>();
+        //where the changes of each leased partition are looked for from, the later of the shared mark and its own
+        private final Map<Long, Instant> since = new HashMap<>();
+        //partitions left to other runs, from the start or after losing the lease
+        private final Set<Long> skipped = new HashSet<>();
+        //partitions with failed items
+        private final Set<Long> failed = new HashSet<>();
+        //partitions this run worked through to the end
+        private final Set<Long> finished = new HashSet<>();
+
+        PartitionCursor(long afterId, int size, Instant changedSince) {
+            super(afterId, size, changedSince);
+        }
+
+        @Override
+        synchronized List<Long> next() {
+            while (true) {
+                if (partition == null) {
+                    //the first changed id left says which partition to try next, empty ranges cost nothing
+                    List<Long> first = itemRepository.findChangedIdsAfter(lastId, changedSince, Limit.of(1));
+                    if (first.isEmpty()) {
+                        return first;
+                    }
+                    long candidate = Math.floorDiv(first.get(0), partitionSize);
+                    if (!leases.claim(candidate, owner)) {
+                        skipped.add(candidate);
+                        lastId = lastIdOf(candidate);
+                        continue;
+                    }
+                    partition = candidate;
+                    pending.put(candidate, 0);
+                    since.put(candidate, reached(candidate));
+                } else if (!leases.renew(partition, owner)) {
+                    //the lease ran out and another run took over the rest of the partition
+                    logger.warn("Lost the lease on processing partition {} after id {}", partition, lastId);
+                    skipped.add(partition);
+                    lastId = lastIdOf(partition);
+                    drain(partition);
+                    continue;
+                }
+                List<Long> ids = itemRepository.findChangedIdsBetween(lastId, lastIdOf(partition), since.get(partition), Limit.of(size));
+                if (ids.isEmpty()) {
+                    lastId = lastIdOf(partition);
+                    drain(partition);
+                    continue;
+                }
+                lastId = ids.get(ids.size() - 1);
+                inFlight.put(ids.get(0), lastId);
+                pending.merge(partition, 1, Integer::sum);
+                return ids;
+            }
+        }
+
+        @Override
+        synchronized long complete(List<Long> ids, boolean failedChunk) {
+            long completed = Math.floorDiv(ids.get(0), partitionSize);
+            if (failedChunk) {
+                failed.add(completed);
+            }
+            if (pending.merge(completed, -1, Integer::sum) == 0 && drained.contains(completed)) {
+                done(completed);
+            }
+            return super.complete(ids, failedChunk);
+        }
+
+        @Override
+        synchronized void advanceMarks(Instant processedUntil) {
+            finished.stream()
+                    .filter(done -> !failed.contains(done))
+                    .forEach(done -> advanceMark(partitionMark(done), processedUntil));
+            Set<Long> behind = new HashSet<>(skipped);
+            behind.addAll(failed);
+            Instant shared = processedUntil;
+            for (long left : behind) {
+                Instant reached = reached(left);
+                if (reached.isBefore(shared)) {
+                    shared = reached;
+                }
+            }
+            advanceMark(CHANGES_MARK, shared);
+            dropPartitionMarks(shared);
+        }
+
+        @Override
+        synchronized void releaseAll() {
+            new ArrayList<>(pending.keySet()).forEach(this::release);
+        }
+
+        //stops handing out the partition, its lease goes back once its chunks in flight are done
+        private void drain(long drainedPartition) {
+            partition = null;
+            if (pending.get(drainedPartition) == 0) {
+                done(drainedPartition);
+            } else {
+                drained.add(drainedPartition);
+            }
+        }
+
+        //every chunk of the partition finished, it was worked through to the end unless another run took it over
+        private void done(long donePartition) {
+            if (!skipped.contains(donePartition)) {
+                finished.add(donePartition);
+            }
+            release(donePartition);
+        }
+
+        //how far the partition's changes are processed: up to its own mark, or the shared one if that is later
+        private Instant reached(long ofPartition) {
+            Instant own = processedUntil(partitionMark(ofPartition));
+            return own.isAfter(changedSince) ? own : changedSince;
+        }
+
+        private void release(long released) {
+            pending.remove(released);
+            drained.remove(released);
+            leases.release(released, owner);
+        }
+
+        private long lastIdOf(long ofPartition) {
+            return ofPartition * partitionSize + partitionSize - 1;
+        }
+    }
+
+    /**
+     * One run of a processor, fetch -> process -> persist.
+     * Fetching and persisting use a connection each, so they run on the shared task executor. The workers never touch
+     * the database, so they run on the worker executor instead and hold no connection permits. A run gets as many
+     * workers as the processor's concurrency, capped at items.processing.max-workers, and the runs share that
+     * executor's threads. Each queue holds at most one chunk per worker, which bounds the items in memory to a few
+     * chunks per worker whatever the size of the table.
+     */
+    private final class Pipeline {
+        private final ItemProcessor processor;
+        private final IdCursor cursor;
+        private final boolean collectItems;
+        private final ChunkListener listener;
+        private final int workers;
+        private final BlockingQueue<Chunk> fetched;
+        private final BlockingQueue<Chunk> processed;
+        private final AtomicInteger runningWorkers;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pipeline(ItemProcessor processor, IdCursor cursor, boolean collectItems, ChunkListener listener) {
+            this.processor = processor;
+            this.cursor = cursor;
+            this.collectItems = collectItems;
+            this.listener = listener;
+            this.workers = Math.max(1, Math.min(processor.concurrency(), maxWorkers));
+            this.fetched = new ArrayBlockingQueue<>(workers);
+            this.processed = new ArrayBlockingQueue<>(workers);
+            this.runningWorkers = new AtomicInteger(workers);
+        }
+
+        CompletableFuture<Void> start() {
+            //the persister is queued first, so a busy executor can't leave the fetcher blocked on a full queue without it
+            taskExecutor.execute(() -> stage(this::persist));
+            taskExecutor.execute(() -> stage(this::fetch));
+            //workers of a failed run stop at their next take, within the poll timeout
+            for (int i = 0; i < workers; i++) {
+                workerExecutor.execute(() -> stage(this::work));
+            }
+            return done;
+        }
+
+        //a failing stage fails the run, the other stages notice and stop
+        private void stage(Runnable body) {
+            try {
+                body.run();
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }
+
+        private void fetch() {
+            try {
+                List<Long> ids;
+                while (!listener.isCancelled() && !(ids = timed("fetch", cursor::next)).isEmpty()) {
+                    List<Long> chunkIds = ids;
+                    List<Item> items = timed("fetch", () -> itemRepository.findAllById(chunkIds));
+                    if (!put(fetched, new Chunk(chunkIds, items, List.of()))) {
+                        return;
+                    }
+                }
+            } catch (RuntimeException e) {
+                //fails the run before the end markers go out, or the persister could complete it first
+                done.completeExceptionally(e);
+                throw e;
+            } finally {
+                //one end marker per worker, each worker stops at the first one it takes
+                for (int i = 0; i < workers; i++) {
+                    if (!put(fetched, END)) {
+                        break;
+                    }
+                }
+            }
+        }
+
+        private void work() {
+            try {
+                Chunk chunk;
+                while ((chunk = take(fetched)) != null && chunk != END) {
+                    Chunk input = chunk;
+                    if (!put(processed, timed("transform", () -> transform(input)))) {
+                        return;
+                    }
+                }
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+                throw e;
+            } finally {
+                //the last worker out tells the persister
+                if (runningWorkers.decrementAndGet() == 0) {
+                    put(processed, END);
+                }
+            }
+        }
+
+        private Chunk transform(Chunk chunk) {
+            List<Item> items = new ArrayList<>(chunk.items().size());
+            List<ProcessingFailure> failures = new ArrayList<>();
+            for (Item item : chunk.items()) {
+                try {
+                    processor.process(item);
+                    items.add(item);
+                } catch (RuntimeException e) {
+                    //the processor's own errors aren't retried, they would fail the same way again
+                    logger.error("Error processing item {}: ", item.getId(), e);
+                    failures.add(new ProcessingFailure(item.getId(), e, 1));
+                }
+            }
+            return new Chunk(chunk.ids(), items, failures);
+        }
+
+        private void persist() {
+            Chunk chunk;
+            while ((chunk = take(processed)) != null && chunk != END) {
+                finish(cursor, chunk.ids(), persistChunk(chunk), collectItems, listener);
+            }
+            done.complete(null);
+        }
+
+        //waits for room in the queue, gives up once the run has failed
+        private boolean put(BlockingQueue<Chunk> queue, Chunk chunk) {
+            try {
+                while (!done.isDone()) {
+                    if (queue.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        //waits for the next chunk, returns null once the run has failed
+        private Chunk take(BlockingQueue<Chunk> queue) {
+            try {
+                while (!done.isDone()) {
+                    Chunk chunk = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (chunk != null) {
+                        return chunk;
+                    }
+                }
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+    }
+}
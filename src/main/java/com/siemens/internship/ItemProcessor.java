@@ -0,0 +1,24 @@
+package com.siemens.internship;
+
+/**
+ * A transformation applied to every item by a processing run.
+ * Spring beans implementing it can be started by bean name through the job API.
+ * Each processor says how many items it wants per chunk and how many chunks it works on at once: CPU bound processors
+ * should stay near the number of cores, processors that mostly wait on I/O can go higher.
+ */
+@FunctionalInterface
+public interface ItemProcessor {
+
+    //changes the item in place, an exception fails only this item
+    void process(Item item);
+
+    //chunks processed at the same time, each on its own thread, at most items.processing.max-workers
+    default int concurrency() {
+        return 1;
+    }
+
+    //items loaded, processed and saved together
+    default int chunkSize() {
+        return 100;
+    }
+}
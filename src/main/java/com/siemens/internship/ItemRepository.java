@@ -1,11 +1,105 @@
 package com.siemens.internship;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
-public interface ItemRepository extends JpaRepository<Item, Long> {
-    @Query("SELECT id FROM Item")
-    List<Long> findAllIds();
+//queries run in read-only transactions, Hibernate then neither flushes nor keeps dirty checking snapshots of what they load
+//the writes declare their own transaction
+@Transactional(readOnly = true)
+public interface ItemRepository extends JpaRepository<Item, Long>, JpaSpecificationExecutor<Item>, ItemFieldsRepository {
+    //keyset page of ids only, used to split processing into chunks
+    @Query("SELECT i.id FROM Item i WHERE i.id > :afterId ORDER BY i.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    //same as findIdsAfter, only the items changed after since and not processed since then
+    @Query("SELECT i.id FROM Item i WHERE i.id > :afterId AND i.lastModified > :since " +
+            "AND (i.processedAt IS NULL OR i.processedAt < i.lastModified) ORDER BY i.id")
+    List<Long> findChangedIdsAfter(@Param("afterId") Long afterId, @Param("since") Instant since, Limit limit);
+
+    //same as findChangedIdsAfter, only up to untilId, e.g. the end of a processing partition
+    @Query("SELECT i.id FROM Item i WHERE i.id > :afterId AND i.id <= :untilId AND i.lastModified > :since " +
+            "AND (i.processedAt IS NULL OR i.processedAt < i.lastModified) ORDER BY i.id")
+    List<Long> findChangedIdsBetween(@Param("afterId") Long afterId, @Param("untilId") Long untilId,
+                                     @Param("since") Instant since, Limit limit);
+
+    @Query("SELECT COUNT(i) FROM Item i WHERE i.lastModified > :since " +
+            "AND (i.processedAt IS NULL OR i.processedAt < i.lastModified)")
+    long countChangedSince(@Param("since") Instant since);
+
+    //sets the status of the given items that still wait for processing, returns the number of rows it changed
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE VERSIONED Item i SET i.status = :status, i.processedAt = INSTANT WHERE i.id IN :ids " +
+            "AND (i.processedAt IS NULL OR i.processedAt < i.lastModified)")
+    int markChanged(@Param("ids") Collection<Long> ids, @Param("status") String status);
+
+    //ids and versions of the given items that have the status, what a status update left them at
+    @Query("SELECT new com.siemens.internship.ItemVersion(i.id, i.version) FROM Item i " +
+            "WHERE i.id IN :ids AND i.status = :status ORDER BY i.id")
+    List<ItemVersion> findVersions(@Param("ids") Collection<Long> ids, @Param("status") String status);
+
+    //keyset page: the next items after the given id, in id order
+    List<Item> findByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit);
+
+    //same page as summaries, only the three columns are selected
+    List<ItemSummary> findSummariesByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit);
+
+    //set based status update over an id range, returns the number of rows it changed
+    //rows that already have the status are left alone, so their version doesn't move
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE VERSIONED Item i SET i.status = :status, i.processedAt = INSTANT WHERE i.id BETWEEN :fromId AND :toId " +
+            "AND (i.status IS NULL OR i.status <> :status)")
+    int updateStatusInRange(@Param("fromId") Long fromId, @Param("toId") Long toId, @Param("status") String status);
+
+    //overwrites an item in one statement, returns 0 if there is no item with this id
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE VERSIONED Item i SET i.name = :#{#item.name}, i.description = :#{#item.description}, " +
+            "i.status = :#{#item.status}, i.email = :#{#item.email}, i.lastModified = INSTANT WHERE i.id = :id")
+    int update(@Param("id") Long id, @Param("item") Item item);
+
+    //same as update, but only if the item still has the expected version
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE VERSIONED Item i SET i.name = :#{#item.name}, i.description = :#{#item.description}, " +
+            "i.status = :#{#item.status}, i.email = :#{#item.email}, i.lastModified = INSTANT " +
+            "WHERE i.id = :id AND i.version = :version")
+    int updateIfVersion(@Param("id") Long id, @Param("version") Long version, @Param("item") Item item);
+
+    //deletes in one statement, returns 0 if there is no item with this id
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Item i WHERE i.id = :id")
+    int deleteItemById(@Param("id") Long id);
+
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Item i WHERE i.id = :id AND i.version = :version")
+    int deleteItemByIdIfVersion(@Param("id") Long id, @Param("version") Long version);
+
+    //the subset of the given ids that exist
+    @Query("SELECT i.id FROM Item i WHERE i.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    //streams every item in id order, the caller must consume it inside a transaction and close it
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT i FROM Item i ORDER BY i.id")
+    Stream<Item> streamAll();
 }
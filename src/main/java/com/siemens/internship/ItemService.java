@@ -1,42 +1,156 @@
 package com.siemens.internship;
 
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataAccessException;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Validated
 @Service
+@Timed(value = "items.service", histogram = true)
 public class ItemService {
+    //single items by id, bounded by size and time in spring.cache.caffeine.spec
+    static final String ITEM_CACHE = "items";
+
     @Autowired
     private ItemRepository itemRepository;
-    private static final ExecutorService executor = Executors.newFixedThreadPool(10);
+    @Autowired
+    private ItemProcessingEngine processingEngine;
+    @Autowired
+    private ItemOutbox outbox;
+    @PersistenceContext
+    private EntityManager entityManager;
     private static final Logger logger = LogManager.getLogger(ItemService.class);
 
 
-    public List<Item> findAll() {
-        return itemRepository.findAll();
+    //reads run in read-only transactions: no flush and no dirty checking snapshots for the entities they return
+    //returns at most limit items with an id greater than afterId (null means from the start), in id order
+    @Transactional(readOnly = true)
+    public List<Item> findPage(Long afterId, int limit) {
+        return itemRepository.findByIdGreaterThanOrderByIdAsc(afterId == null ? Long.MIN_VALUE : afterId, Limit.of(limit));
+    }
+
+    //same as findPage, only returning the items that match the filter
+    @Transactional(readOnly = true)
+    public List<Item> findPage(ItemFilter filter, Long afterId, int limit) {
+        if (filter.isEmpty()) {
+            return findPage(afterId, limit);
+        }
+        return itemRepository.findBy(filter.after(afterId == null ? Long.MIN_VALUE : afterId),
+                query -> query.sortBy(Sort.by("id")).limit(limit).all());
+    }
+
+    //same page as findPage with only the given fields of each item, selected as columns instead of loading entities
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> findPage(ItemFilter filter, Long afterId, int limit, ItemFields fields) {
+        return itemRepository.findFields(filter.after(afterId == null ? Long.MIN_VALUE : afterId), fields, limit);
+    }
+
+    //id, name and status of the same page as findPage
+    @Transactional(readOnly = true)
+    public List<ItemSummary> findSummaryPage(Long afterId, int limit) {
+        return itemRepository.findSummariesByIdGreaterThanOrderByIdAsc(afterId == null ? Long.MIN_VALUE : afterId, Limit.of(limit));
     }
 
+    /**
+     * Passes every item to the consumer in id order while reading them from a database cursor.
+     * Each item is detached once consumed, so memory use does not grow with the size of the table.
+     */
+    @Transactional(readOnly = true)
+    public void forEach(Consumer<Item> consumer) {
+        try (Stream<Item> items = itemRepository.streamAll()) {
+            items.forEach(item -> {
+                consumer.accept(item);
+                entityManager.detach(item);
+            });
+        }
+    }
+
+    //read through the item cache, missing items are not cached
+    //no transaction here so a cache hit doesn't take a connection, the repository reads in its own read-only one
+    @Cacheable(cacheNames = ITEM_CACHE, unless = "#result == null")
     public Optional<Item> findById(Long id) {
         return itemRepository.findById(id);
     }
 
+    //writes go to the outbox in the same transaction, see ItemChangeRelay
+    @Transactional
+    @CachePut(cacheNames = ITEM_CACHE, key = "#result.id")
     public Item save(Item item) {
-        return itemRepository.save(item);
+        Item saved = itemRepository.save(item);
+        outbox.saved(saved);
+        return saved;
     }
 
+    @Transactional
+    @CacheEvict(cacheNames = ITEM_CACHE, key = "#id")
     public void deleteById(Long id) {
         itemRepository.deleteById(id);
+        outbox.deleted(id);
+    }
+
+    /**
+     * Overwrites an existing item with a single UPDATE statement, without reading it first.
+     * If an expected version is given the update only applies to that version.
+     * Returns empty if the item does not exist and throws OptimisticLockingFailureException if it exists
+     * with another version. Otherwise returns the item as stored, read back in the same transaction, so it carries
+     * the version and lastModified the update set, and the outbox publishes the same.
+     */
+    @Transactional
+    @CacheEvict(cacheNames = ITEM_CACHE, key = "#id")
+    public Optional<Item> update(Long id, Item item, Long expectedVersion) {
+        int updated = expectedVersion == null
+                ? itemRepository.update(id, item)
+                : itemRepository.updateIfVersion(id, expectedVersion, item);
+        if (updated == 0) {
+            checkVersionConflict(id, expectedVersion);
+            return Optional.empty();
+        }
+        //the update holds the row lock until commit, so this reads exactly what it wrote; it cleared the persistence
+        //context, so the row comes from the database and not from an entity loaded earlier in the transaction
+        Item stored = itemRepository.findById(id).orElseThrow();
+        outbox.saved(stored);
+        return Optional.of(stored);
+    }
+
+    //deletes with a single DELETE statement, same rules as update; returns false if the item does not exist
+    @Transactional
+    @CacheEvict(cacheNames = ITEM_CACHE, key = "#id")
+    public boolean delete(Long id, Long expectedVersion) {
+        int deleted = expectedVersion == null
+                ? itemRepository.deleteItemById(id)
+                : itemRepository.deleteItemByIdIfVersion(id, expectedVersion);
+        if (deleted == 0) {
+            checkVersionConflict(id, expectedVersion);
+            return false;
+        }
+        outbox.deleted(id);
+        return true;
+    }
+
+    //only called when a write touched no row, to tell a stale version from a missing item
+    private void checkVersionConflict(Long id, Long expectedVersion) {
+        if (expectedVersion != null && itemRepository.existsById(id)) {
+            throw new OptimisticLockingFailureException("Item " + id + " is no longer at version " + expectedVersion);
+        }
     }
 
 
@@ -45,58 +159,18 @@ public class ItemService {
      *used CompletableFuture.runAsync() without collecting the futures, it did not wait for any async task to finish
      *used shared mutable processedItems, processedCount across threads without synchronization
      *did not propagate or log errors correctly
+     *the next version created one future per id, each doing its own findById and save
+     Items are now processed in chunks by the {@link ItemProcessingEngine}.
+     Marking items as processed is a pure status change, so it takes the set based update path.
+     It completes with counts rather than the processed items, a list of every item would have to be held in memory.
      */
-    @Async
-    public CompletableFuture<List<Item>> processItemsAsync() {
-
-        //all item ids for the processing
-        List<Long> itemIds = itemRepository.findAllIds();
-
-        //create a list of ComputableFutures, one for each item's async processing
-        List<CompletableFuture<Item>> futures = itemIds.stream()
-                .map(id->CompletableFuture.supplyAsync(()->{
-                    try{
-                        //simulate some delay
-                        Thread.sleep(100);
-                        //attempt to fetch item by id from db
-                        return itemRepository.findById(id).orElse(null);
-                    }catch(InterruptedException e){
-                        //restore the interrupted status and propagate the error
-                        Thread.currentThread().interrupt();
-                        logger.error(e);
-                        throw new CompletionException(e);
-                    }
-
-                },executor).thenApply(item->{
-                    //process the item if it was found in the db
-                    if(item!=null){
-                        try {
-                            //set item status to indicate the processing
-                            item.setStatus("PROCESSED");
-                            //save the update in db
-                            return itemRepository.save(item);
-                        }
-                        catch (Exception e) {
-                            //log any failure during save
-                            logger.error("Error saving item: ",e);
-                            //return null to skip the item
-                           return null;
-                        }
-                    }
-                    //skip null items
-                    return null;
-                })).toList();
-
-        //combine all futures into one that completes when all tasks are done
-        CompletableFuture<Void> allDone = CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
-
-        //after all futures complete join result without null items
-        return allDone.thenApply(f->futures.stream()
-                .map(CompletableFuture::join)
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList()));
+    public CompletableFuture<ProcessingSummary> processItemsAsync() {
+        return processingEngine.processAll();
+    }
 
+    //runs a custom processor through the engine's fetch, process and persist pipeline
+    public CompletableFuture<ProcessingSummary> processItemsAsync(ItemProcessor processor) {
+        return processingEngine.processAll(processor);
     }
 
 }
-
@@ -0,0 +1,7 @@
+package com.siemens.internship;
+
+import java.util.List;
+
+//the body of a STATUS change in the outbox: the items a set based write moved to the status, at their new versions
+public record ItemStatusChange(String status, List<ItemVersion> items) {
+}
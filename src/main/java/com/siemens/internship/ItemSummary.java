@@ -0,0 +1,5 @@
+package com.siemens.internship;
+
+//the columns a list of items usually shows, read straight into the record without loading entities
+public record ItemSummary(Long id, String name, String status) {
+}
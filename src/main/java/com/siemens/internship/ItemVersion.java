@@ -0,0 +1,5 @@
+package com.siemens.internship;
+
+//an item's id and the version a write left it at, read without loading the entity
+public record ItemVersion(Long id, Long version) {
+}
@@ -0,0 +1,38 @@
+package com.siemens.internship;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Besides json, the items API speaks CBOR (application/cbor) and Smile (application/x-jackson-smile), chosen by the
+ * Accept and Content-Type headers. Both are binary encodings of the same documents, smaller and faster to write and
+ * parse for machine clients.
+ * Their mappers come from spring boot's builder, so they are configured like the json one, Blackbird included.
+ */
+@Configuration
+public class JacksonConfig {
+
+    //reads and writes properties through generated lambdas instead of reflection, registered with every mapper boot builds
+    @Bean
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+
+    //take the place of spring's own converters for these types, which use a mapper without boot's settings
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+}
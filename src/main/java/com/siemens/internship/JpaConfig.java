@@ -0,0 +1,12 @@
+package com.siemens.internship;
+
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+//the reactive repository maps the same entity, JPA must not try to implement it
+@Configuration
+@EnableJpaRepositories(excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = ReactiveItemRepository.class))
+public class JpaConfig {
+}
@@ -0,0 +1,48 @@
+package com.siemens.internship;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Dead letter of a processing run: an item that still failed after its retries, and why.
+ * The rest of the run goes on without it, the item is picked up again by the next run.
+ */
+@Entity
+@Table(indexes = @Index(name = "idx_processing_failure_job", columnList = "job_id, id"))
+@Getter
+@Setter
+@NoArgsConstructor
+public class ProcessingFailure {
+    static final int MAX_CAUSE_LENGTH = 1000;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "processing_failure_seq")
+    @SequenceGenerator(name = "processing_failure_seq", sequenceName = "processing_failure_seq", allocationSize = 50)
+    private Long id;
+    private Long itemId;
+    //null for runs that weren't started as a job
+    private String jobId;
+    @Column(length = MAX_CAUSE_LENGTH)
+    private String cause;
+    private int attempts;
+    private Instant failedAt;
+
+    public ProcessingFailure(Long itemId, Throwable cause, int attempts) {
+        this.itemId = itemId;
+        String text = cause.getClass().getSimpleName() + ": " + cause.getMessage();
+        this.cause = text.length() > MAX_CAUSE_LENGTH ? text.substring(0, MAX_CAUSE_LENGTH) : text;
+        this.attempts = attempts;
+        this.failedAt = Instant.now();
+    }
+}
@@ -0,0 +1,11 @@
+package com.siemens.internship;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface ProcessingFailureRepository extends JpaRepository<ProcessingFailure, Long> {
+    //the dead letters of a job after the given one, in the order they were written
+    List<ProcessingFailure> findByJobIdAndIdGreaterThanOrderByIdAsc(String jobId, Long afterId, Limit limit);
+}
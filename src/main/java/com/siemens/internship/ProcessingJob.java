@@ -0,0 +1,70 @@
+package com.siemens.internship;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A processing run started through the job API.
+ * Counters and the checkpoint are written after every chunk, so progress survives a restart of the application.
+ * The run that works on the job holds a lease on it, a job whose lease ran out is resumed by the next node that looks.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class ProcessingJob {
+    public enum Status { RUNNING, COMPLETED, CANCELLED, FAILED }
+
+    @Id
+    private String id;
+    @Enumerated(EnumType.STRING)
+    private Status status;
+    private long total;
+    private long processed;
+    private long failed;
+    //every item with an id up to this one has been processed
+    private Long lastProcessedId;
+    private Instant startedAt;
+    private Instant finishedAt;
+    //bean name of the item processor, null for the default status transition
+    private String processor;
+    //the run working on the job and until when it holds it, by the database's clock
+    private String owner;
+    private Instant leaseExpiresAt;
+
+    public ProcessingJob(long total) {
+        this.id = UUID.randomUUID().toString();
+        this.status = Status.RUNNING;
+        this.total = total;
+        this.startedAt = Instant.now();
+    }
+
+    //items per second since the job started
+    @JsonProperty
+    public double getThroughput() {
+        Instant end = finishedAt == null ? Instant.now() : finishedAt;
+        long millis = Math.max(1, Duration.between(startedAt, end).toMillis());
+        return (processed + failed) * 1000.0 / millis;
+    }
+
+    //estimated seconds left at the current throughput, null when the job is over or nothing was processed yet
+    @JsonProperty
+    public Long getEtaSeconds() {
+        double throughput = getThroughput();
+        if (status != Status.RUNNING || throughput == 0) {
+            return null;
+        }
+        long remaining = Math.max(0, total - processed - failed);
+        return (long) Math.ceil(remaining / throughput);
+    }
+}
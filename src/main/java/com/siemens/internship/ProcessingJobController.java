@@ -0,0 +1,78 @@
+package com.siemens.internship;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import java.net.URI;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/items/process/jobs")
+public class ProcessingJobController {
+
+    @Autowired
+    private ProcessingJobService jobService;
+
+    @Value("${items.page.max-size:1000}")
+    private int maxPageSize;
+
+    //starts processing all items in the background, the job can be polled at the returned location
+    //processor is the bean name of an ItemProcessor, without it the items are marked as processed
+    //while the engine is running as many runs as it may the job isn't created, 429 says when to try again
+    @PostMapping
+    public ResponseEntity<ProcessingJob> startJob(@RequestParam(required = false) String processor) {
+        ProcessingJob job;
+        try {
+            job = jobService.start(processor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (ProcessingRejectedException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfter().toSeconds()))
+                    .build();
+        }
+        URI location = ServletUriComponentsBuilder.fromCurrentRequest()
+                .path("/{id}")
+                .buildAndExpand(job.getId())
+                .toUri();
+        return ResponseEntity.accepted().location(location).body(job);
+    }
+
+    //gets the progress of a job
+    @GetMapping("/{id}")
+    public ResponseEntity<ProcessingJob> getJob(@PathVariable String id) {
+        return jobService.findById(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    //the items the job failed on and why, after the given dead letter id
+    @GetMapping("/{id}/failures")
+    public ResponseEntity<List<ProcessingFailure>> getJobFailures(@PathVariable String id,
+                                                                  @RequestParam(defaultValue = "0") long after,
+                                                                  @RequestParam(defaultValue = "100") int limit) {
+        if (limit <= 0 || limit > maxPageSize) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+        if (jobService.findById(id).isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(jobService.findFailures(id, after, limit));
+    }
+
+    //cancels a running job, a job that already ended can't be cancelled
+    @DeleteMapping("/{id}")
+    public ResponseEntity<ProcessingJob> cancelJob(@PathVariable String id) {
+        return jobService.cancel(id)
+                .map(job -> job.getStatus() == ProcessingJob.Status.CANCELLED
+                        ? ResponseEntity.ok(job)
+                        : new ResponseEntity<>(job, HttpStatus.CONFLICT))
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,70 @@
+package com.siemens.internship;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+//leases are set and checked with the database's clock, like the partition leases
+public interface ProcessingJobRepository extends JpaRepository<ProcessingJob, String> {
+    //running jobs whose run stopped renewing its lease, e.g. because its node died
+    @Query("SELECT j FROM ProcessingJob j WHERE j.status = com.siemens.internship.ProcessingJob.Status.RUNNING " +
+            "AND (j.leaseExpiresAt IS NULL OR j.leaseExpiresAt < INSTANT)")
+    List<ProcessingJob> findExpired();
+
+    //takes over a running job whose lease ran out, returns 0 if another node took it first
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProcessingJob j SET j.owner = :owner, j.leaseExpiresAt = INSTANT + :nanos NANOSECOND " +
+            "WHERE j.id = :id AND j.status = com.siemens.internship.ProcessingJob.Status.RUNNING " +
+            "AND (j.leaseExpiresAt IS NULL OR j.leaseExpiresAt < INSTANT)")
+    int claim(@Param("id") String id, @Param("owner") String owner, @Param("nanos") long nanos);
+
+    //extends the lease of a job the owner still runs, returns 0 if the job ended or was taken over
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProcessingJob j SET j.leaseExpiresAt = INSTANT + :nanos NANOSECOND " +
+            "WHERE j.id = :id AND j.owner = :owner AND j.status = com.siemens.internship.ProcessingJob.Status.RUNNING")
+    int renew(@Param("id") String id, @Param("owner") String owner, @Param("nanos") long nanos);
+
+    //leaves a claimed job to whichever node looks next
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProcessingJob j SET j.owner = NULL, j.leaseExpiresAt = NULL WHERE j.id = :id AND j.owner = :owner")
+    int release(@Param("id") String id, @Param("owner") String owner);
+
+    //whether the owner still runs the job, false once it was cancelled, ended or taken over
+    @Query("SELECT COUNT(j) > 0 FROM ProcessingJob j WHERE j.id = :id AND j.owner = :owner " +
+            "AND j.status = com.siemens.internship.ProcessingJob.Status.RUNNING")
+    boolean isRunning(@Param("id") String id, @Param("owner") String owner);
+
+    //adds a chunk's counts in place and renews the lease, lanes finish out of order so the checkpoint only moves forward
+    //returns 0 and records nothing once the job was cancelled, ended or taken over
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProcessingJob j SET j.processed = j.processed + :processed, j.failed = j.failed + :failed, " +
+            "j.lastProcessedId = CASE WHEN j.lastProcessedId IS NULL OR j.lastProcessedId < :checkpoint " +
+            "THEN :checkpoint ELSE j.lastProcessedId END, j.leaseExpiresAt = INSTANT + :nanos NANOSECOND " +
+            "WHERE j.id = :id AND j.owner = :owner AND j.status = com.siemens.internship.ProcessingJob.Status.RUNNING")
+    int recordProgress(@Param("id") String id, @Param("owner") String owner, @Param("processed") long processed,
+                       @Param("failed") long failed, @Param("checkpoint") long checkpoint, @Param("nanos") long nanos);
+
+    //ends a job unless it already ended, e.g. a cancelled job must not be reported as completed
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProcessingJob j SET j.status = :status, j.finishedAt = :finishedAt " +
+            "WHERE j.id = :id AND j.status = com.siemens.internship.ProcessingJob.Status.RUNNING")
+    int finish(@Param("id") String id, @Param("status") ProcessingJob.Status status, @Param("finishedAt") Instant finishedAt);
+
+    //ends a job the owner still runs, a run that lost its job to another node leaves it to that one
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProcessingJob j SET j.status = :status, j.finishedAt = :finishedAt " +
+            "WHERE j.id = :id AND j.owner = :owner AND j.status = com.siemens.internship.ProcessingJob.Status.RUNNING")
+    int finish(@Param("id") String id, @Param("owner") String owner, @Param("status") ProcessingJob.Status status,
+               @Param("finishedAt") Instant finishedAt);
+}
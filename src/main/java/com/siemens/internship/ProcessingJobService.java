@@ -0,0 +1,196 @@
+package com.siemens.internship;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Starts, tracks and cancels processing jobs.
+ * A job runs in the background and records its progress after every chunk. Its run holds a lease on it for
+ * items.processing.lease-duration, renewed with every chunk and every items.processing.job-heartbeat; a job whose
+ * lease ran out, because its node stopped or died, is resumed from its checkpoint by the next node that looks, at its
+ * start or heartbeat. Items that failed are counted in the job and their dead letters can be read back by job id.
+ */
+@Service
+public class ProcessingJobService {
+    private static final Logger logger = LogManager.getLogger(ProcessingJobService.class);
+
+    @Autowired
+    private ProcessingJobRepository jobRepository;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private ItemProcessingEngine processingEngine;
+
+    @Autowired
+    private ProcessingFailureRepository failureRepository;
+
+    @Autowired
+    private ProcessingLeases leases;
+
+    @Autowired
+    private DatabaseClock clock;
+
+    @Value("${items.processing.lease-duration:5m}")
+    private Duration leaseDuration;
+
+    //item processor beans by name, a job can run any of them
+    @Autowired(required = false)
+    private Map<String, ItemProcessor> processors = Map.of();
+
+    //the jobs running in this application
+    private final Map<String, Run> running = new ConcurrentHashMap<>();
+
+    //creates a job for all items and starts it in the background, a null processor marks the items as processed
+    //throws ProcessingRejectedException, and keeps no job, if the engine is already running as many runs as it may
+    public ProcessingJob start(String processor) {
+        if (processor != null && !processors.containsKey(processor)) {
+            throw new IllegalArgumentException("Unknown item processor " + processor);
+        }
+        //the default transition only visits items changed since the last run
+        long total = processor == null ? processingEngine.countChanged() : itemRepository.count();
+        ProcessingJob job = new ProcessingJob(total);
+        job.setProcessor(processor);
+        //leased from the start, so no other node resumes it before its first chunk
+        job.setOwner(leases.newOwner());
+        job.setLeaseExpiresAt(clock.now().plus(leaseDuration));
+        job = jobRepository.save(job);
+        try {
+            launch(job, job.getOwner());
+        } catch (ProcessingRejectedException e) {
+            jobRepository.deleteById(job.getId());
+            throw e;
+        }
+        return job;
+    }
+
+    public Optional<ProcessingJob> findById(String id) {
+        return jobRepository.findById(id);
+    }
+
+    //the items of a job that failed after their retries, a page at a time
+    public List<ProcessingFailure> findFailures(String id, long afterId, int limit) {
+        return failureRepository.findByJobIdAndIdGreaterThanOrderByIdAsc(id, afterId, Limit.of(limit));
+    }
+
+    //stops a running job after its current chunks, returns the job as it is afterwards
+    //a job running on another node sees the status at its next chunk
+    public Optional<ProcessingJob> cancel(String id) {
+        Run run = running.get(id);
+        if (run != null) {
+            run.cancelled().set(true);
+        }
+        jobRepository.finish(id, ProcessingJob.Status.CANCELLED, Instant.now());
+        return jobRepository.findById(id);
+    }
+
+    //renews the leases of the jobs running here, then resumes the jobs whose lease ran out
+    @Scheduled(fixedDelayString = "${items.processing.job-heartbeat:60000}",
+            initialDelayString = "${items.processing.job-heartbeat:60000}")
+    public void heartbeat() {
+        running.forEach((id, run) -> {
+            if (jobRepository.renew(id, run.owner(), leaseDuration.toNanos()) == 0) {
+                run.cancelled().set(true);
+            }
+        });
+        resumeInterruptedJobs();
+    }
+
+    //resumes the running jobs whose lease ran out, each on the one node that claims it first
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeInterruptedJobs() {
+        for (ProcessingJob job : jobRepository.findExpired()) {
+            String owner = leases.newOwner();
+            if (running.containsKey(job.getId()) || jobRepository.claim(job.getId(), owner, leaseDuration.toNanos()) == 0) {
+                continue;
+            }
+            logger.info("Resuming processing job {} after id {}", job.getId(), job.getLastProcessedId());
+            try {
+                launch(job, owner);
+            } catch (ProcessingRejectedException e) {
+                //as many runs as may run at once are going, the job is left for the next heartbeat here or elsewhere
+                logger.info("Processing job {} can't be resumed yet, {}", job.getId(), e.getMessage());
+                jobRepository.release(job.getId(), owner);
+            }
+        }
+    }
+
+    private void launch(ProcessingJob job, String owner) {
+        String id = job.getId();
+        Run run = new Run(owner, new AtomicBoolean());
+        running.put(id, run);
+        long afterId = job.getLastProcessedId() == null ? Long.MIN_VALUE : job.getLastProcessedId();
+        ItemProcessor processor = job.getProcessor() == null ? ItemProcessingEngine.MARK_PROCESSED : processors.get(job.getProcessor());
+        if (processor == null) {
+            //a job resumed after its processor was removed from the application
+            logger.error("Processing job {} failed, item processor {} not found", id, job.getProcessor());
+            running.remove(id);
+            jobRepository.finish(id, owner, ProcessingJob.Status.FAILED, Instant.now());
+            return;
+        }
+
+        ItemProcessingEngine.ChunkListener listener = new ItemProcessingEngine.ChunkListener() {
+            @Override
+            public void onChunk(ItemProcessingEngine.ChunkResult result) {
+                if (jobRepository.recordProgress(id, owner, result.processed(), result.failed(), result.checkpoint(),
+                        leaseDuration.toNanos()) == 0) {
+                    run.cancelled().set(true);
+                }
+            }
+
+            //asked before every chunk, the job may have been cancelled or taken over on another node
+            @Override
+            public boolean isCancelled() {
+                if (!run.cancelled().get() && !jobRepository.isRunning(id, owner)) {
+                    run.cancelled().set(true);
+                }
+                return run.cancelled().get();
+            }
+
+            @Override
+            public String jobId() {
+                return id;
+            }
+        };
+        CompletableFuture<Void> future;
+        try {
+            future = processor == ItemProcessingEngine.MARK_PROCESSED
+                    ? processingEngine.runChanged(afterId, false, listener)
+                    : processingEngine.run(afterId, processor, false, listener);
+        } catch (ProcessingRejectedException e) {
+            running.remove(id);
+            throw e;
+        }
+        future.whenComplete((v, e) -> {
+            running.remove(id);
+            if (e != null) {
+                logger.error("Processing job {} failed", id, e);
+                jobRepository.finish(id, owner, ProcessingJob.Status.FAILED, Instant.now());
+            } else {
+                //a cancelled job is already finished and one taken over belongs to another run, both are left as they are
+                jobRepository.finish(id, owner, ProcessingJob.Status.COMPLETED, Instant.now());
+            }
+        });
+    }
+
+    //a job running here, its lease owner and cancel flag
+    private record Run(String owner, AtomicBoolean cancelled) {
+    }
+}
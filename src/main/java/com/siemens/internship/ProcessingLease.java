@@ -0,0 +1,25 @@
+package com.siemens.internship;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Lease on one partition of the item id space, so that only one processing run at a time, on any node, works on it.
+ * A lease nobody renews runs out at expiresAt, so a node that dies doesn't keep its partitions.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class ProcessingLease {
+    @Id
+    private Long partitionId;
+    //the run holding the lease, null once it was given back
+    private String owner;
+    private Instant expiresAt;
+}
@@ -0,0 +1,38 @@
+package com.siemens.internship;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+
+//each write is one conditional statement, the row lock of the update decides between runs claiming at the same time
+//expiry is set and checked with the database's clock, so nodes whose clocks drift apart still agree on when a lease ran out
+public interface ProcessingLeaseRepository extends JpaRepository<ProcessingLease, Long> {
+    //takes the lease if it's free or ran out, returns 0 if another run holds it or there's no row yet
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProcessingLease l SET l.owner = :owner, l.expiresAt = INSTANT + :nanos NANOSECOND " +
+            "WHERE l.partitionId = :partitionId AND (l.owner IS NULL OR l.expiresAt < INSTANT)")
+    int claim(@Param("partitionId") long partitionId, @Param("owner") String owner, @Param("nanos") long nanos);
+
+    //the first claim of a partition, fails with a DataIntegrityViolationException if another run inserted it first
+    @Transactional
+    @Modifying
+    @Query("INSERT INTO ProcessingLease (partitionId, owner, expiresAt) VALUES (:partitionId, :owner, INSTANT + :nanos NANOSECOND)")
+    int insert(@Param("partitionId") long partitionId, @Param("owner") String owner, @Param("nanos") long nanos);
+
+    //extends a lease the owner still holds, returns 0 if it ran out and was taken over
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProcessingLease l SET l.expiresAt = INSTANT + :nanos NANOSECOND " +
+            "WHERE l.partitionId = :partitionId AND l.owner = :owner AND l.expiresAt >= INSTANT")
+    int renew(@Param("partitionId") long partitionId, @Param("owner") String owner, @Param("nanos") long nanos);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE ProcessingLease l SET l.owner = NULL, l.expiresAt = INSTANT " +
+            "WHERE l.partitionId = :partitionId AND l.owner = :owner")
+    int release(@Param("partitionId") long partitionId, @Param("owner") String owner);
+}
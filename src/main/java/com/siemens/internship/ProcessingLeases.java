@@ -0,0 +1,68 @@
+package com.siemens.internship;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Hands out leases on partitions of the item id space to processing runs, through the processing_lease table shared
+ * by every node. A run holds a lease for items.processing.lease-duration and renews it while it keeps working on the
+ * partition; a run that stops renewing, e.g. because its node died, loses the partition to the next run that asks.
+ * Leases run out by the database's clock, not by the clock of any node.
+ */
+@Component
+public class ProcessingLeases {
+    private static final Logger logger = LogManager.getLogger(ProcessingLeases.class);
+
+    @Autowired
+    private ProcessingLeaseRepository leaseRepository;
+
+    //names this node in the lease table, a random one if not set
+    @Value("${items.processing.node-id:}")
+    private String nodeId;
+
+    @Value("${items.processing.lease-duration:5m}")
+    private Duration leaseDuration;
+
+    //a new owner for every run, so two runs on one node don't share their leases
+    public String newOwner() {
+        String node = nodeId == null || nodeId.isBlank() ? "node" : nodeId;
+        return node + "/" + UUID.randomUUID();
+    }
+
+    public boolean claim(long partition, String owner) {
+        if (leaseRepository.claim(partition, owner, leaseDuration.toNanos()) == 1) {
+            return true;
+        }
+        if (leaseRepository.existsById(partition)) {
+            return false;
+        }
+        try {
+            return leaseRepository.insert(partition, owner, leaseDuration.toNanos()) == 1;
+        } catch (DataIntegrityViolationException e) {
+            //another run claimed the partition for the first time just now
+            return false;
+        }
+    }
+
+    //false if the lease ran out and another run took the partition
+    public boolean renew(long partition, String owner) {
+        return leaseRepository.renew(partition, owner, leaseDuration.toNanos()) == 1;
+    }
+
+    //a lease that can't be given back just runs out
+    public void release(long partition, String owner) {
+        try {
+            leaseRepository.release(partition, owner);
+        } catch (DataAccessException e) {
+            logger.warn("Could not release the lease on processing partition {}", partition, e);
+        }
+    }
+}
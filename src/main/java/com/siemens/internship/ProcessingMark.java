@@ -0,0 +1,29 @@
+package com.siemens.internship;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * High-water mark of incremental processing: every item last changed before processedUntil has been processed.
+ * Kept in the database so the next run, on this node or after a restart, only looks at items changed since.
+ * Partitioned runs also keep one per partition, e.g. items:3 for partition 3, which may be ahead of the shared one.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class ProcessingMark {
+    @Id
+    private String name;
+    private Instant processedUntil;
+
+    public ProcessingMark(String name, Instant processedUntil) {
+        this.name = name;
+        this.processedUntil = processedUntil;
+    }
+}
@@ -0,0 +1,17 @@
+package com.siemens.internship;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+public interface ProcessingMarkRepository extends JpaRepository<ProcessingMark, String> {
+    //deletes the marks whose names start with prefix and that don't go past processedUntil
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM ProcessingMark m WHERE m.name LIKE :prefix% AND m.processedUntil <= :processedUntil")
+    int deleteUpTo(@Param("prefix") String prefix, @Param("processedUntil") Instant processedUntil);
+}
@@ -0,0 +1,17 @@
+package com.siemens.internship;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+//thrown instead of starting a processing run when items.processing.max-concurrent-runs are already going
+@Getter
+public class ProcessingRejectedException extends RuntimeException {
+    //when the caller should try again
+    private final Duration retryAfter;
+
+    public ProcessingRejectedException(int runningRuns, Duration retryAfter) {
+        super(runningRuns + " processing runs are already going");
+        this.retryAfter = retryAfter;
+    }
+}
@@ -0,0 +1,8 @@
+package com.siemens.internship;
+
+/**
+ * What a processing run did: how many items it processed and how many it gave up on, which are in the
+ * processing_failure dead-letter table. Items that were deleted or needed no change in the meantime are in neither.
+ */
+public record ProcessingSummary(long processed, long failed) {
+}
@@ -0,0 +1,24 @@
+package com.siemens.internship;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+//rate limits every item endpoint, set items.rate-limit.enabled=false to turn it off
+@Configuration
+@ConditionalOnProperty(name = "items.rate-limit.enabled", matchIfMissing = true)
+public class RateLimitConfig {
+
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilter(
+            @Value("${items.rate-limit.capacity:200}") long capacity,
+            @Value("${items.rate-limit.refill-per-second:100}") double refillPerSecond,
+            @Value("${items.rate-limit.max-clients:100000}") long maxClients) {
+        FilterRegistrationBean<RateLimitFilter> registration =
+                new FilterRegistrationBean<>(new RateLimitFilter(capacity, refillPerSecond, maxClients));
+        registration.addUrlPatterns("/api/items/*", "/api/reactive/items/*");
+        return registration;
+    }
+}
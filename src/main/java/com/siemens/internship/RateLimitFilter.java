@@ -0,0 +1,77 @@
+package com.siemens.internship;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Per client token bucket in front of the item endpoints: a client may send capacity requests at once and then
+ * refillPerSecond requests a second, anything more is answered with 429 and a Retry-After until a token is back.
+ * Clients are told apart by their remote address, behind a proxy server.forward-headers-strategy makes it the
+ * client's. A bucket that isn't used for as long as it takes to fill up is dropped, it would be full anyway.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+    private final long capacity;
+    private final double refillPerNano;
+    private final LongSupplier nanoTime;
+    private final Cache<String, Bucket> buckets;
+
+    public RateLimitFilter(long capacity, double refillPerSecond, long maxClients) {
+        this(capacity, refillPerSecond, maxClients, System::nanoTime);
+    }
+
+    RateLimitFilter(long capacity, double refillPerSecond, long maxClients, LongSupplier nanoTime) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.nanoTime = nanoTime;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Duration.ofNanos((long) Math.ceil(capacity / refillPerNano)))
+                .build();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Bucket bucket = buckets.get(request.getRemoteAddr(), client -> new Bucket(capacity, nanoTime.getAsLong()));
+        long waitNanos = bucket.take(nanoTime.getAsLong());
+        if (waitNanos == 0) {
+            chain.doFilter(request, response);
+            return;
+        }
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, (long) Math.ceil(waitNanos / 1e9))));
+    }
+
+    private final class Bucket {
+        private double tokens;
+        private long refilledAt;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.refilledAt = now;
+        }
+
+        //takes a token and returns 0, or returns how long until there is one
+        synchronized long take(long now) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * refillPerNano);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens--;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / refillPerNano);
+        }
+    }
+}
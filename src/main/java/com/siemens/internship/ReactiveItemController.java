@@ -0,0 +1,42 @@
+package com.siemens.internship;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reactive variant of the items API, only available with the reactive profile.
+ * Spring MVC subscribes to the returned publishers and writes each item as it arrives, the request thread is handed
+ * back to Tomcat as soon as the handler returns instead of being held for the whole response.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping("/api/reactive/items")
+public class ReactiveItemController {
+
+    @Autowired
+    private ReactiveItemService itemService;
+
+    //streams every item as newline delimited JSON
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Item> getAllItems() {
+        return itemService.findAll();
+    }
+
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<Item>> getItemById(@PathVariable Long id) {
+        return itemService.findById(id)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    //marks every item as processed, streaming each one once it's saved
+    @GetMapping(value = "/process", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Item> processItems() {
+        return itemService.processAll();
+    }
+}
@@ -0,0 +1,31 @@
+package com.siemens.internship;
+
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * R2DBC access to the item table, only created with the reactive profile.
+ * R2DBC doesn't know the JPA version column, so writes bump and check it themselves to stay safe next to JPA writers.
+ */
+public interface ReactiveItemRepository extends R2dbcRepository<Item, Long> {
+
+    //keyset page, the next page starts after the last id of this one
+    @Query("SELECT * FROM item WHERE id > :afterId ORDER BY id LIMIT :limit")
+    Flux<Item> findPageAfter(long afterId, int limit);
+
+    //returns 0 if the item was changed or deleted since it was read
+    @Modifying
+    @Query("UPDATE item SET status = :status, processed_at = CURRENT_TIMESTAMP, version = version + 1 " +
+            "WHERE id = :id AND version = :version")
+    Mono<Integer> updateStatusIfVersion(long id, long version, String status);
+
+    //a STATUS change in the outbox, see ItemOutbox; the seq is the top of a block of the sequence, which JPA's pooled
+    //ids never hand out twice
+    @Modifying
+    @Query("INSERT INTO item_change (seq, item_id, type, item, occurred_at) " +
+            "VALUES (NEXT VALUE FOR item_change_seq, NULL, 'STATUS', :item, CURRENT_TIMESTAMP)")
+    Mono<Integer> insertStatusChange(String item);
+}
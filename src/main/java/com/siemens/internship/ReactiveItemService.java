@@ -0,0 +1,95 @@
+package com.siemens.internship;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * Non blocking counterpart of {@link ItemService} for the reactive profile.
+ * Items are read page by page as the subscriber asks for them, so a stream holds at most a few pages in memory and no
+ * thread waits on the database in between.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveItemService {
+
+    @Autowired
+    private ReactiveItemRepository itemRepository;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Autowired
+    private TransactionalOperator transactionalOperator;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${items.reactive.page-size:500}")
+    private int pageSize;
+
+    @Value("${items.reactive.concurrency:16}")
+    private int concurrency;
+
+    //every item in id order
+    public Flux<Item> findAll() {
+        return itemRepository.findPageAfter(Long.MIN_VALUE, pageSize).collectList()
+                .expand(page -> page.size() < pageSize
+                        ? Mono.empty()
+                        : itemRepository.findPageAfter(page.get(page.size() - 1).getId(), pageSize).collectList())
+                .flatMapIterable(page -> page);
+    }
+
+    public Mono<Item> findById(Long id) {
+        return itemRepository.findById(id);
+    }
+
+    /**
+     * Marks every item as processed and emits each one once it's saved.
+     * At most items.reactive.concurrency updates are in flight, and reading only moves on as they complete.
+     * Items changed or deleted between reading and updating are left out and picked up by the next run.
+     * Each update records a status change in the outbox in the same transaction, like the JPA processing path.
+     */
+    public Flux<Item> processAll() {
+        return findAll().flatMap(this::markProcessed, concurrency);
+    }
+
+    private Mono<Item> markProcessed(Item item) {
+        return itemRepository.updateStatusIfVersion(item.getId(), item.getVersion(), ItemProcessingEngine.PROCESSED)
+                .filter(updated -> updated == 1)
+                .flatMap(updated -> {
+                    item.setStatus(ItemProcessingEngine.PROCESSED);
+                    item.setVersion(item.getVersion() + 1);
+                    return itemRepository.insertStatusChange(toJson(new ItemStatusChange(ItemProcessingEngine.PROCESSED,
+                            List.of(new ItemVersion(item.getId(), item.getVersion()))))).thenReturn(item);
+                })
+                .as(transactionalOperator::transactional)
+                .doOnNext(processed -> evict(processed.getId()));
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(value + " cannot be written as json", e);
+        }
+    }
+
+    //the item was written behind the JPA side's cache
+    private void evict(Long id) {
+        Cache cache = cacheManager.getCache(ItemService.ITEM_CACHE);
+        if (cache != null) {
+            cache.evict(id);
+        }
+    }
+}
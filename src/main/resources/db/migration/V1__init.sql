@@ -0,0 +1,77 @@
+-- schema of the performance profile, which has Flyway own the schema instead of hibernate.ddl-auto
+-- change it with a new V<n>__*.sql migration, never by editing this one
+
+create sequence item_change_seq start with 1 increment by 1;
+
+create sequence item_seq start with 1 increment by 50;
+
+create sequence processing_failure_seq start with 1 increment by 50;
+
+create table item (
+    id bigint not null,
+    last_modified timestamp(6) with time zone not null,
+    processed_at timestamp(6) with time zone,
+    version bigint,
+    description varchar(255),
+    email varchar(255),
+    name varchar(255),
+    status varchar(255),
+    primary key (id)
+);
+
+create table item_change (
+    item_id bigint,
+    occurred_at timestamp(6) with time zone,
+    seq bigint not null,
+    item clob,
+    type enum ('DELETED','SAVED'),
+    primary key (seq)
+);
+
+create table processing_failure (
+    attempts integer not null,
+    failed_at timestamp(6) with time zone,
+    id bigint not null,
+    item_id bigint,
+    cause varchar(1000),
+    job_id varchar(255),
+    primary key (id)
+);
+
+create table processing_job (
+    failed bigint not null,
+    finished_at timestamp(6) with time zone,
+    last_processed_id bigint,
+    processed bigint not null,
+    started_at timestamp(6) with time zone,
+    total bigint not null,
+    id varchar(255) not null,
+    processor varchar(255),
+    status enum ('CANCELLED','COMPLETED','FAILED','RUNNING'),
+    primary key (id)
+);
+
+create table processing_lease (
+    expires_at timestamp(6) with time zone,
+    partition_id bigint not null,
+    owner varchar(255),
+    primary key (partition_id)
+);
+
+create table processing_mark (
+    processed_until timestamp(6) with time zone,
+    name varchar(255) not null,
+    primary key (name)
+);
+
+create index idx_item_status  on item (status, id);
+
+create index idx_item_email  on item (email);
+
+create index idx_item_name  on item (name);
+
+create index idx_item_last_modified  on item (last_modified);
+
+create index idx_item_change_occurred_at  on item_change (occurred_at);
+
+create index idx_processing_failure_job  on processing_failure (job_id, id);
@@ -0,0 +1,2 @@
+-- processing publishes one STATUS change per chunk of items
+alter table item_change alter column "TYPE" set data type enum ('DELETED','SAVED','STATUS');
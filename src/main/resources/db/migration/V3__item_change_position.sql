@@ -0,0 +1,4 @@
+-- outbox ids come in pooled blocks, the relay orders the changes by the position it gives them once committed
+alter sequence item_change_seq increment by 50;
+alter table item_change add column position bigint;
+alter table item_change add constraint uk_item_change_position unique (position);
@@ -0,0 +1,3 @@
+-- the run working on a job holds a lease on it, other nodes only resume jobs whose lease ran out
+alter table processing_job add column owner varchar(255);
+alter table processing_job add column lease_expires_at timestamp(6) with time zone;
@@ -0,0 +1,150 @@
+package com.siemens.internship;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedTaskExecutorTest {
+
+    @Test
+    void testConcurrencyIsLimitedByConnections() throws Exception {
+        //more threads than connections, only two tasks may run at once
+        BoundedTaskExecutor executor = BoundedTaskExecutor.create(BoundedTaskExecutor.Mode.PLATFORM, 6, 2, Duration.ofSeconds(5));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(12);
+
+        for (int i = 0; i < 12; i++) {
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, maxRunning.get());
+        executor.destroy();
+    }
+
+    @Test
+    void testVirtualModeRunsTasks() throws Exception {
+        //on runtimes without virtual threads this falls back to the platform pool
+        BoundedTaskExecutor executor = BoundedTaskExecutor.create(BoundedTaskExecutor.Mode.VIRTUAL, 2, 2, Duration.ofSeconds(5));
+
+        assertEquals("done", executor.submit(() -> "done").get(5, TimeUnit.SECONDS));
+        executor.destroy();
+    }
+
+    @Test
+    void testDestroyWaitsForRunningTasks() throws Exception {
+        BoundedTaskExecutor executor = BoundedTaskExecutor.create(BoundedTaskExecutor.Mode.PLATFORM, 1, 1, Duration.ofSeconds(5));
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean finished = new AtomicBoolean();
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(100);
+                finished.set(true);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.destroy();
+        assertTrue(finished.get());
+    }
+
+    @Test
+    void testDestroyInterruptsTasksAfterTimeout() throws Exception {
+        ExecutorService delegate = Executors.newSingleThreadExecutor();
+        BoundedTaskExecutor executor = new BoundedTaskExecutor("item", delegate, 1, Duration.ofMillis(50));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.destroy();
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue(delegate.isShutdown());
+    }
+
+    @Test
+    void testGaugesReportActiveAndQueuedTasks() throws Exception {
+        BoundedTaskExecutor executor = BoundedTaskExecutor.create(BoundedTaskExecutor.Mode.PLATFORM, 2, 1, Duration.ofSeconds(5));
+        MeterRegistry registry = new SimpleMeterRegistry();
+        executor.bindTo(registry);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable blocking = () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+
+        executor.execute(blocking);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        //the second task has a thread but waits for the only connection permit
+        executor.execute(blocking);
+        Thread.sleep(50);
+
+        assertEquals(1, registry.get("items.executor.active").tag("executor", "item").gauge().value());
+        assertEquals(1, registry.get("items.executor.queued").gauge().value());
+        assertEquals(0, registry.get("items.executor.connections.available").gauge().value());
+        release.countDown();
+        executor.destroy();
+        assertEquals(0, registry.get("items.executor.active").gauge().value());
+        assertEquals(0, registry.get("items.executor.queued").gauge().value());
+    }
+
+    @Test
+    void testRejectedTaskIsNotCountedAsQueued() throws Exception {
+        BoundedTaskExecutor executor = BoundedTaskExecutor.create(BoundedTaskExecutor.Mode.PLATFORM, 1, 1, Duration.ofSeconds(5));
+        MeterRegistry registry = new SimpleMeterRegistry();
+        executor.bindTo(registry);
+        executor.destroy();
+
+        assertThrows(TaskRejectedException.class, () -> executor.execute(() -> { }));
+
+        assertEquals(0, registry.get("items.executor.queued").gauge().value());
+    }
+
+    @Test
+    void testHintsKeepVirtualThreadLookupInNativeImage() {
+        RuntimeHints hints = new RuntimeHints();
+        new BoundedTaskExecutor.Hints().registerHints(hints, getClass().getClassLoader());
+
+        assertTrue(RuntimeHintsPredicates.reflection().onType(Executors.class)
+                .withMemberCategory(MemberCategory.INVOKE_PUBLIC_METHODS).test(hints));
+    }
+}
@@ -1,7 +1,19 @@
 package com.siemens.internship;
+import jakarta.validation.ConstraintValidator;
 import jakarta.validation.Validation;
 import jakarta.validation.Validator;
+import jakarta.validation.constraints.Email;
+import jakarta.validation.metadata.ConstraintDescriptor;
 import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -41,4 +53,69 @@ public class EmailValidationTest {
         violations = emailValidator.validate(item);
         assertTrue(violations.isEmpty());
     }
+
+    //hibernate validator's own @Email validator, the one EmailValidator replaces
+    private static ConstraintValidator<Email, CharSequence> hibernateEmailValidator() throws NoSuchFieldException {
+        var validator = new org.hibernate.validator.internal.constraintvalidators.bv.EmailValidator();
+        validator.initialize(Item.class.getDeclaredField("email").getAnnotation(Email.class));
+        return validator;
+    }
+
+    @Test
+    void testEmailValidatorIsRegistered() {
+        ConstraintDescriptor<?> email = emailValidator.getConstraintsForClass(Item.class)
+                .getConstraintsForProperty("email").getConstraintDescriptors().iterator().next();
+        assertEquals(List.of(EmailValidator.class), email.getConstraintValidatorClasses());
+    }
+
+    @Test
+    void testHintsKeepRegistrationInNativeImage() {
+        RuntimeHints hints = new RuntimeHints();
+        new EmailValidator.Hints().registerHints(hints, getClass().getClassLoader());
+
+        assertTrue(RuntimeHintsPredicates.resource().forResource("META-INF/validation.xml").test(hints));
+        assertTrue(RuntimeHintsPredicates.resource().forResource("META-INF/constraints.xml").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(EmailValidator.class)
+                .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints));
+    }
+
+    @Test
+    void testSameResultsAsHibernateValidator() throws Exception {
+        ConstraintValidator<Email, CharSequence> hibernate = hibernateEmailValidator();
+        List<String> emails = new ArrayList<>(List.of(
+                "a@b", "a.b@c.d", "a..b@c.d", ".a@b.c", "a.@b.c", "a@b..c", "a@-b.c", "a@b-.c", "a@b--c.d", "a@b.c-d",
+                "\"a b\"@c.d", "\"a\\\\b\"@c.d", "\"a\\\"b\"@c.d", "\"a\\b\"@c.d", "\"\"@c.d", "\"a\".b@c.d", "\"a\"b@c.d",
+                "\"a@b\"@c.d", "a@b@c.d", "@b.c", "a@", "a@[1.2.3.4]", "a@[1.2.3.1234]", "a@[1.2.3]", "a@[IPv6:::1]",
+                "a@[ipv6:2001:db8::1]", "a@[IPv6:fe80::1%eth0]", "a@[IPv6:::ffff:1.2.3.4]", "a@[IPv6:zz::1]", "a@[::1]",
+                "ü@ö.de", "a@münchen.de", "a@b\u3002c", "a@xn--mnchen-3ya.de", "A@B.COM", "a+tag@b.c", "a b@c.d",
+                "a@b.c ", " a@b.c", "a@b_c.d", "a@1.2.3.4", "a@b.c.", "a@[1.2.3.4"));
+        emails.add("a".repeat(64) + "@b.c");
+        emails.add("a".repeat(65) + "@b.c");
+        emails.add("a@" + "b".repeat(63) + ".c");
+        emails.add("a@" + "b".repeat(64) + ".c");
+        emails.add("a@" + ("b".repeat(63) + ".").repeat(3) + "b".repeat(63));
+        emails.add("a@" + ("b".repeat(63) + ".").repeat(4) + "b");
+        emails.add("a@" + ("ü".repeat(20) + ".").repeat(4) + "b");
+        emails.add("a@" + "ü".repeat(60) + ".c");
+        for (String email : emails) {
+            assertEquals(hibernate.isValid(email, null), EmailValidator.isValid(email), email);
+        }
+
+        //random addresses made of the characters either validator treats specially
+        Random random = new Random(42);
+        String local = "aZ9.\"\\ @(!-é";
+        String domain = "aZ9.-[]:_!é\u3002";
+        for (int i = 0; i < 200_000; i++) {
+            String email = randomString(random, local, 8) + (random.nextInt(10) == 0 ? "" : "@") + randomString(random, domain, 8);
+            assertEquals(hibernate.isValid(email, null), EmailValidator.isValid(email), email);
+        }
+    }
+
+    private static String randomString(Random random, String characters, int maxLength) {
+        StringBuilder value = new StringBuilder();
+        for (int i = random.nextInt(maxLength + 1); i > 0; i--) {
+            value.append(characters.charAt(random.nextInt(characters.length())));
+        }
+        return value.toString();
+    }
 }
@@ -0,0 +1,196 @@
+package com.siemens.internship;
+
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.NotNull;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class ItemBatchServiceTest {
+    @Mock
+    private ItemRepository itemRepository;
+
+    @Spy
+    private TransactionOperations transactionOperations = TransactionOperations.withoutTransaction();
+
+    @Spy
+    private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Spy
+    private CacheManager cacheManager = new ConcurrentMapCacheManager(ItemService.ITEM_CACHE);
+
+    @Mock
+    private ItemOutbox outbox;
+
+    @Mock
+    private DatabaseClock clock;
+
+    @InjectMocks
+    private ItemBatchService batchService;
+
+    private long nextId = 100;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(batchService, "chunkSize", 2);
+        when(itemRepository.saveAll(anyList())).thenAnswer(i -> {
+            List<Item> items = i.getArgument(0);
+            items.forEach(item -> {
+                item.setId(nextId++);
+                item.setVersion(0L);
+            });
+            return items;
+        });
+    }
+
+    @Test
+    public void testCreateAll() {
+        List<Item> items = List.of(
+                new Item(7L, "a", "desc", "NEW", "a@a.com"),
+                new Item(null, "b", "desc", "NEW", "invalid"),
+                new Item(null, "c", "desc", "NEW", "c@c.com"),
+                new Item(null, "d", "desc", "NEW", "d@d.com"));
+
+        List<BatchResult> results = batchService.createAll(items.iterator());
+
+        assertEquals(List.of(0, 1, 2, 3), results.stream().map(BatchResult::index).toList());
+        assertEquals(BatchResult.Status.CREATED, results.get(0).status());
+        //the id in the request is replaced by a generated one
+        assertEquals(100L, results.get(0).id());
+        assertEquals(BatchResult.Status.INVALID, results.get(1).status());
+        assertEquals(List.of("email: Invalid email format"), results.get(1).errors());
+        assertEquals(BatchResult.Status.CREATED, results.get(3).status());
+        //three valid items in chunks of two
+        verify(itemRepository, times(2)).saveAll(anyList());
+        verify(outbox, times(2)).savedAll(anyList());
+    }
+
+    @Test
+    public void testValidItemsSkipTheValidator() {
+        Item invalid = new Item(null, "b", "desc", "NEW", "invalid@");
+
+        List<BatchResult> results = batchService.createAll(List.of(
+                new Item(null, "a", "desc", "NEW", "a@a.com"),
+                invalid,
+                new Item(null, "c", "desc", "NEW", "")).iterator());
+
+        assertEquals(List.of(BatchResult.Status.CREATED, BatchResult.Status.INVALID, BatchResult.Status.CREATED),
+                results.stream().map(BatchResult::status).toList());
+        assertEquals(List.of("email: Invalid email format"), results.get(1).errors());
+        //only the invalid item needs the violations, for its messages
+        verify(validator).validate(invalid);
+        verify(validator, times(1)).validate(any());
+    }
+
+    private static class Constrained {
+        @Email
+        private String email;
+        @NotNull
+        private String name;
+    }
+
+    private static class EmailWithPattern {
+        @Email(regexp = ".*@example\\.com")
+        private String email;
+    }
+
+    @Test
+    public void testFastPathOnlyWhenEmailIsTheOnlyConstraint() {
+        assertTrue(ItemBatchService.onlyEmailConstrained(validator.getConstraintsForClass(Item.class)));
+        assertFalse(ItemBatchService.onlyEmailConstrained(validator.getConstraintsForClass(Constrained.class)));
+        assertFalse(ItemBatchService.onlyEmailConstrained(validator.getConstraintsForClass(EmailWithPattern.class)));
+    }
+
+    @Test
+    public void testCreateAllRetriesFailedChunkOneByOne() {
+        Item good = new Item(null, "a", "desc", "NEW", "a@a.com");
+        Item bad = new Item(null, "b", "desc", "NEW", "b@b.com");
+        when(itemRepository.saveAll(anyList())).thenAnswer(i -> {
+            List<Item> items = i.getArgument(0);
+            if (items.contains(bad)) {
+                throw new RuntimeException("DB error");
+            }
+            items.forEach(item -> item.setId(nextId++));
+            return items;
+        });
+
+        List<BatchResult> results = batchService.createAll(List.of(good, bad).iterator());
+
+        assertEquals(BatchResult.Status.CREATED, results.get(0).status());
+        assertEquals(BatchResult.Status.FAILED, results.get(1).status());
+        assertEquals(List.of("DB error"), results.get(1).errors());
+        //only the item that was written reaches the outbox
+        verify(outbox).savedAll(List.of(good));
+        verify(outbox, never()).savedAll(List.of(bad));
+    }
+
+    @Test
+    public void testUpdateAll() {
+        Item stored1 = new Item(1L, "a", "desc", "NEW", "a@a.com");
+        stored1.setVersion(3L);
+        Item stored2 = new Item(2L, "b", "desc", "NEW", "b@b.com");
+        stored2.setVersion(5L);
+        when(itemRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(stored1, stored2));
+        when(itemRepository.findAllById(List.of(9L))).thenReturn(List.of());
+        Instant now = Instant.parse("2025-06-01T12:00:00Z");
+        when(clock.now()).thenReturn(now);
+        Item staleUpdate = new Item(2L, "b2", "desc", "NEW", "b@b.com");
+        staleUpdate.setVersion(4L);
+        cacheManager.getCache(ItemService.ITEM_CACHE).put(1L, stored1);
+
+        List<BatchResult> results = batchService.updateAll(List.of(
+                new Item(1L, "a2", "desc", "DONE", "a@a.com"),
+                staleUpdate,
+                new Item(9L, "c", "desc", "NEW", "c@c.com"),
+                new Item(null, "d", "desc", "NEW", "d@d.com")).iterator());
+
+        assertEquals(BatchResult.Status.UPDATED, results.get(0).status());
+        assertEquals("a2", stored1.getName());
+        assertEquals("DONE", stored1.getStatus());
+        //changed at the database's time, the clock processing compares it with
+        assertEquals(now, stored1.getLastModified());
+        assertEquals(BatchResult.Status.CONFLICT, results.get(1).status());
+        assertEquals("b", stored2.getName());
+        assertEquals(BatchResult.Status.NOT_FOUND, results.get(2).status());
+        assertEquals(BatchResult.Status.INVALID, results.get(3).status());
+        assertEquals(List.of("id: is required"), results.get(3).errors());
+        //no per row save, the loaded entities are flushed
+        verify(itemRepository, never()).save(any());
+        assertNull(cacheManager.getCache(ItemService.ITEM_CACHE).get(1L));
+        verify(outbox).savedAll(List.of(stored1));
+    }
+
+    @Test
+    public void testDeleteAll() {
+        when(itemRepository.findExistingIds(List.of(1L, 2L))).thenReturn(List.of(1L));
+        when(itemRepository.findExistingIds(List.of(3L))).thenReturn(List.of(3L));
+
+        List<BatchResult> results = batchService.deleteAll(List.of(1L, 2L, 3L));
+
+        assertEquals(List.of(BatchResult.Status.DELETED, BatchResult.Status.NOT_FOUND, BatchResult.Status.DELETED),
+                results.stream().map(BatchResult::status).toList());
+        assertEquals(List.of(0, 1, 2), results.stream().map(BatchResult::index).toList());
+        verify(itemRepository).deleteAllByIdInBatch(List.of(1L));
+        verify(itemRepository).deleteAllByIdInBatch(List.of(3L));
+        verify(outbox).deletedAll(List.of(1L));
+        verify(outbox).deletedAll(List.of(3L));
+    }
+}
@@ -0,0 +1,185 @@
+package com.siemens.internship;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionOperations;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.Mockito.*;
+
+public class ItemChangeRelayTest {
+    @Mock
+    private ItemChangeRepository changeRepository;
+
+    @Mock
+    private ItemChangeListener listener;
+
+    @InjectMocks
+    private ItemChangeRelay relay;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(relay, "listeners", List.of(listener));
+        ReflectionTestUtils.setField(relay, "batchSize", 2);
+        ReflectionTestUtils.setField(relay, "transactionOperations", TransactionOperations.withoutTransaction());
+        when(changeRepository.findLastPosition()).thenReturn(10L);
+    }
+
+    private static ItemChange change(long position) {
+        ItemChange change = new ItemChange(position, ItemChange.Type.SAVED, "{}");
+        change.setSeq(position);
+        change.setPosition(position);
+        return change;
+    }
+
+    private static ItemChange unpositioned(long seq) {
+        ItemChange change = new ItemChange(seq, ItemChange.Type.SAVED, "{}");
+        change.setSeq(seq);
+        return change;
+    }
+
+    //the text of everything sent in one call
+    private static String sent(SseEmitter emitter, int call) throws IOException {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Set<ResponseBodyEmitter.DataWithMediaType>> events = ArgumentCaptor.forClass(Set.class);
+        verify(emitter, atLeast(call + 1)).send(events.capture());
+        return events.getAllValues().get(call).stream()
+                .map(data -> String.valueOf(data.getData()))
+                .collect(Collectors.joining());
+    }
+
+    @Test
+    void testRelaysChangesInBatches() {
+        ItemChange c11 = change(11);
+        ItemChange c12 = change(12);
+        ItemChange c13 = change(13);
+        when(changeRepository.findAfter(10L, Limit.of(2))).thenReturn(List.of(c11, c12));
+        when(changeRepository.findAfter(12L, Limit.of(2))).thenReturn(List.of(c13));
+
+        relay.relay();
+
+        verify(listener).onChanges(List.of(c11, c12));
+        verify(listener).onChanges(List.of(c13));
+    }
+
+    @Test
+    void testCommittedChangesArePositionedInSeqOrder() {
+        //the block of one node and a later block of another, committed in any order
+        ItemChange c101 = unpositioned(101);
+        ItemChange c52 = unpositioned(52);
+        ItemChange c53 = unpositioned(53);
+        when(changeRepository.findUnpositioned(Limit.of(2))).thenReturn(List.of(c52, c53), List.of(c101), List.of());
+        when(changeRepository.findLastPosition()).thenReturn(10L, 10L, 12L);
+
+        relay.relay();
+
+        assertEquals(11L, c52.getPosition());
+        assertEquals(12L, c53.getPosition());
+        assertEquals(13L, c101.getPosition());
+        verify(changeRepository, times(2)).findUnpositioned(Limit.of(2));
+    }
+
+    @Test
+    void testLosingThePositionRaceStillRelaysWhatIsPositioned() {
+        when(changeRepository.findUnpositioned(Limit.of(2)))
+                .thenThrow(new DataIntegrityViolationException("uk_item_change_position"));
+        ItemChange c11 = change(11);
+        when(changeRepository.findAfter(10L, Limit.of(2))).thenReturn(List.of(c11));
+
+        relay.relay();
+
+        verify(listener).onChanges(List.of(c11));
+        assertEquals(11L, ReflectionTestUtils.getField(relay, "cursor"));
+    }
+
+    @Test
+    void testFailingListenerDoesNotStopTheRelay() {
+        ItemChangeListener other = mock(ItemChangeListener.class);
+        ReflectionTestUtils.setField(relay, "listeners", List.of(listener, other));
+        doThrow(new RuntimeException("boom")).when(listener).onChanges(any());
+        ItemChange c11 = change(11);
+        when(changeRepository.findAfter(10L, Limit.of(2))).thenReturn(List.of(c11));
+
+        relay.relay();
+
+        verify(other).onChanges(List.of(c11));
+    }
+
+    @Test
+    void testSubscriberCatchesUpThenFollows() throws IOException {
+        SseEmitter emitter = mock(SseEmitter.class);
+        relay.subscribe(emitter, 5L);
+        when(changeRepository.findBetween(5L, 10L, Limit.of(2))).thenReturn(List.of(change(6), change(7)));
+        when(changeRepository.findBetween(7L, 10L, Limit.of(2))).thenReturn(List.of(change(9)));
+
+        relay.relay();
+
+        assertTrue(sent(emitter, 0).contains("id:6\nevent:change\n"));
+        assertTrue(sent(emitter, 0).contains("id:7\n"));
+        assertTrue(sent(emitter, 1).contains("id:9\n"));
+
+        when(changeRepository.findAfter(10L, Limit.of(2))).thenReturn(List.of(change(11)));
+        relay.relay();
+
+        assertTrue(sent(emitter, 2).contains("id:11\n"));
+        verify(emitter, times(3)).send(anySet());
+    }
+
+    @Test
+    void testNewSubscriberStartsAtTheRelay() throws IOException {
+        SseEmitter emitter = mock(SseEmitter.class);
+        relay.subscribe(emitter, null);
+
+        relay.relay();
+
+        verify(changeRepository, never()).findBetween(anyLong(), anyLong(), any());
+        verify(emitter, never()).send(anySet());
+    }
+
+    @Test
+    void testSubscriberThatGoesAwayIsDropped() throws IOException {
+        SseEmitter emitter = mock(SseEmitter.class);
+        doThrow(new IOException("closed")).when(emitter).send(anySet());
+        relay.subscribe(emitter, null);
+        relay.relay();
+        when(changeRepository.findAfter(10L, Limit.of(2))).thenReturn(List.of(change(11)));
+        relay.relay();
+        when(changeRepository.findAfter(11L, Limit.of(2))).thenReturn(List.of(change(12)));
+
+        relay.relay();
+
+        verify(emitter, times(1)).send(anySet());
+        //the listeners still get every batch
+        verify(listener, times(2)).onChanges(any());
+    }
+
+    @Test
+    void testPurgeDeletesChangesOlderThanTheRetention() {
+        ReflectionTestUtils.setField(relay, "retention", Duration.ofDays(7));
+
+        relay.purge();
+
+        ArgumentCaptor<Instant> before = ArgumentCaptor.forClass(Instant.class);
+        verify(changeRepository).deleteOlderThan(before.capture());
+        assertTrue(before.getValue().isBefore(Instant.now().minus(Duration.ofDays(7)).plusSeconds(1)));
+    }
+}
@@ -8,18 +8,30 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.*;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 import static org.hamcrest.Matchers.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -34,6 +46,12 @@ public class ItemControllerTest {
     @MockBean
     private ItemService itemService;
 
+    @MockBean
+    private ItemBatchService itemBatchService;
+
+    @MockBean
+    private ItemChangeRelay changeRelay;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -47,13 +65,111 @@ public class ItemControllerTest {
     }
 
     @Test
-    void testGetAllItems() {
+    void testGetAllItems() throws Exception {
         List<Item> items=List.of(new Item(1L,"name","desc","NEW","test@gmail.com"));
-        when(itemService.findAll()).thenReturn(items);
+        when(itemService.findPage(ItemFilter.NONE,null,100)).thenReturn(items);
+
+        //last page, no cursor
+        mockMvc.perform(get("/api/items"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].id",is(1)))
+                .andExpect(header().doesNotExist("X-Next-Cursor"));
+
+        //full page, cursor points at the last id
+        items=List.of(new Item(4L,"a","desc","NEW","a@a.com"),new Item(7L,"b","desc","NEW","b@b.com"));
+        when(itemService.findPage(ItemFilter.NONE,3L,2)).thenReturn(items);
+        mockMvc.perform(get("/api/items").param("after","3").param("limit","2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(header().string("X-Next-Cursor","7"));
+
+        //page size out of bounds
+        mockMvc.perform(get("/api/items").param("limit","0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/items").param("limit","1001"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGetFilteredItems() throws Exception {
+        List<Item> items=List.of(new Item(4L,"abc","desc","NEW","a@a.com"),new Item(9L,"abd","desc","NEW","a@a.com"));
+        when(itemService.findPage(new ItemFilter(null,"PROCESSED","a@a.com","ab"),2L,2)).thenReturn(items);
 
-        var resp=itemController.getAllItems();
-        assertEquals(1,resp.getBody().size());
-        assertEquals(1L,resp.getBody().get(0).getId());
+        //filters and the cursor go together, the next page keeps the same filters
+        mockMvc.perform(get("/api/items").param("after","2").param("limit","2")
+                        .param("statusNot","PROCESSED").param("email","a@a.com").param("namePrefix","ab"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[*].id", contains(4,9)))
+                .andExpect(header().string("X-Next-Cursor","9"));
+    }
+
+    @Test
+    void testGetItemFields() throws Exception {
+        Map<String,Object> row=new LinkedHashMap<>();
+        row.put("id",4L);
+        row.put("status","NEW");
+        when(itemService.findPage(ItemFilter.NONE,null,1,new ItemFields(List.of("id","status")))).thenReturn(List.of(row));
+
+        mockMvc.perform(get("/api/items").param("limit","1").param("fields","status"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(4))
+                .andExpect(jsonPath("$[0].status").value("NEW"))
+                .andExpect(jsonPath("$[0].name").doesNotExist())
+                .andExpect(header().string("X-Next-Cursor","4"));
+        verify(itemService, never()).findPage(any(), any(), anyInt());
+
+        //an unknown field is a client error, not a silently missing column
+        mockMvc.perform(get("/api/items").param("fields","status,password"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGetItemByIdFields() throws Exception {
+        Item item=new Item(1L,"name","desc","NEW","a@a.com");
+        item.setVersion(2L);
+        when(itemService.findById(1L)).thenReturn(Optional.of(item));
+
+        mockMvc.perform(get("/api/items/1").param("fields","name"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG,"\"2\""))
+                .andExpect(content().json("{\"id\":1,\"name\":\"name\"}",true));
+    }
+
+    @Test
+    void testGetItemSummaries() throws Exception {
+        when(itemService.findSummaryPage(3L,2)).thenReturn(List.of(new ItemSummary(5L,"a","NEW"),new ItemSummary(8L,"b",null)));
+
+        mockMvc.perform(get("/api/items/summaries").param("after","3").param("limit","2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[1].name").value("b"))
+                .andExpect(jsonPath("$[0].description").doesNotExist())
+                .andExpect(header().string("X-Next-Cursor","8"));
+
+        mockMvc.perform(get("/api/items/summaries").param("limit","0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testStreamAllItems() throws Exception {
+        doAnswer(inv->{
+            Consumer<Item> consumer=inv.getArgument(0);
+            consumer.accept(new Item(1L,"Item1","desc","NEW","a@a.com"));
+            consumer.accept(new Item(2L,"Item2","desc","NEW","b@b.com"));
+            return null;
+        }).when(itemService).forEach(any());
+
+        MvcResult result = mockMvc.perform(get("/api/items/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(2L, objectMapper.readValue(lines[1], Item.class).getId());
     }
 
     @Test
@@ -62,13 +178,15 @@ public class ItemControllerTest {
 
         //when id is found
         when(itemService.findById(1L)).thenReturn(Optional.of(item));
-        var response = itemController.getItemById(1L);
+        item.setVersion(2L);
+        var response = itemController.getItemById(1L, null);
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(item, response.getBody());
+        assertEquals("\"2\"", response.getHeaders().getETag());
 
         //when id is not found
         when(itemService.findById(2L)).thenReturn(Optional.empty());
-        response = itemController.getItemById(2L);
+        response = itemController.getItemById(2L, null);
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
     }
 
@@ -94,21 +212,23 @@ public class ItemControllerTest {
 
     @Test
     void testUpdateItem() throws Exception {
-        Item existing = new Item(1L, "Item", "desc", "NEW", "email@test.com");
         Item update = new Item(null, "new", "desc", "PROCESSED", "new@email.com");
+        Item updated = new Item(1L, "new", "desc", "PROCESSED", "new@email.com");
+        updated.setVersion(2L);
 
-        //for item that exists
-        when(itemService.findById(1L)).thenReturn(Optional.of(existing));
-        when(itemService.save(any())).thenReturn(update);
+        //for item that exists, the stored item comes back with its version as the ETag
+        when(itemService.update(eq(1L), any(), isNull())).thenReturn(Optional.of(updated));
 
         mockMvc.perform(put("/api/items/1")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(update)))
                 .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"2\""))
                 .andExpect(jsonPath("$.name").value("new"));
+        verify(itemService, never()).findById(any());
 
         //for item that doesn't exist
-        when(itemService.findById(5L)).thenReturn(Optional.empty());
+        when(itemService.update(eq(5L), any(), isNull())).thenReturn(Optional.empty());
 
         mockMvc.perform(put("/api/items/5")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -117,27 +237,57 @@ public class ItemControllerTest {
     }
 
     @Test
-    void testDeleteItem() {
-        Item item = new Item(1L, "Item", "desc", "NEW", "email@test.com");
+    void testUpdateItemIfMatch() throws Exception {
+        Item update = new Item(null, "new", "desc", "PROCESSED", "new@email.com");
+        Item updated = new Item(1L, "new", "desc", "PROCESSED", "new@email.com");
+        updated.setVersion(4L);
+
+        //matching version, the new version comes back as the ETag
+        when(itemService.update(eq(1L), any(), eq(3L))).thenReturn(Optional.of(updated));
+        mockMvc.perform(put("/api/items/1")
+                        .header(HttpHeaders.IF_MATCH, "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(update)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""));
+
+        //stale version
+        when(itemService.update(eq(1L), any(), eq(2L))).thenThrow(new OptimisticLockingFailureException("stale"));
+        mockMvc.perform(put("/api/items/1")
+                        .header(HttpHeaders.IF_MATCH, "W/\"2\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(update)))
+                .andExpect(status().isPreconditionFailed());
+
+        //not a version
+        mockMvc.perform(put("/api/items/1")
+                        .header(HttpHeaders.IF_MATCH, "\"abc\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(update)))
+                .andExpect(status().isBadRequest());
+    }
 
+    @Test
+    void testDeleteItem() {
         //when item exists
-        when(itemService.findById(1L)).thenReturn(Optional.of(item));
-        var response = itemController.deleteItem(1L);
+        when(itemService.delete(1L, null)).thenReturn(true);
+        var response = itemController.deleteItem(1L, null);
         assertEquals(HttpStatus.OK, response.getStatusCode());
 
         //when item doesn't exist
-        when(itemService.findById(1L)).thenReturn(Optional.empty());
-        response = itemController.deleteItem(1L);
+        when(itemService.delete(1L, null)).thenReturn(false);
+        response = itemController.deleteItem(1L, null);
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+
+        //when the item has another version
+        when(itemService.delete(1L, 7L)).thenThrow(new OptimisticLockingFailureException("stale"));
+        response = itemController.deleteItem(1L, "\"7\"");
+        assertEquals(HttpStatus.PRECONDITION_FAILED, response.getStatusCode());
     }
 
     @Test
     void testProcessItems() throws Exception {
-        List<Item> items = List.of(
-                new Item(1L, "Item1", "desc", "PROCESSED", "a@a.com"),
-                new Item(2L, "Item2", "desc", "PROCESSED", "b@b.com")
-        );
-        when(itemService.processItemsAsync()).thenReturn(CompletableFuture.completedFuture(items));
+        when(itemService.processItemsAsync()).thenReturn(CompletableFuture.completedFuture(new ProcessingSummary(2, 1)));
 
         MvcResult result = mockMvc.perform(get("/api/items/process"))
                 .andExpect(request().asyncStarted())
@@ -145,8 +295,143 @@ public class ItemControllerTest {
 
         mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$", hasSize(2)))
-                .andExpect(jsonPath("$[0].id",is(1)))
-                .andExpect(jsonPath("$[1].id",is(2)));
+                .andExpect(jsonPath("$.processed", is(2)))
+                .andExpect(jsonPath("$.failed", is(1)));
+    }
+
+    @Test
+    void testProcessItemsRejectedWhileBusy() throws Exception {
+        when(itemService.processItemsAsync()).thenThrow(new ProcessingRejectedException(2, Duration.ofSeconds(30)));
+
+        MvcResult result = mockMvc.perform(get("/api/items/process"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "30"));
+    }
+
+    @Test
+    void testProcessItemsDatabaseUnavailable() throws Exception {
+        when(itemService.processItemsAsync()).thenReturn(CompletableFuture.failedFuture(new QueryTimeoutException("timeout")));
+
+        MvcResult result = mockMvc.perform(get("/api/items/process"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "30"))
+                .andExpect(jsonPath("$.status", is(503)))
+                .andExpect(jsonPath("$.detail", is("Processing stopped because the database is unavailable, try again later")));
+    }
+
+    @Test
+    void testProcessItemsFailed() throws Exception {
+        when(itemService.processItemsAsync()).thenReturn(CompletableFuture.supplyAsync(() -> {
+            throw new IllegalStateException("bug");
+        }));
+
+        MvcResult result = mockMvc.perform(get("/api/items/process"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isInternalServerError())
+                .andExpect(jsonPath("$.status", is(500)))
+                .andExpect(jsonPath("$.detail", is("Processing failed, items processed before the failure stay processed")));
+    }
+
+    @Test
+    void testCreateItems() throws Exception {
+        List<BatchResult> results = List.of(
+                new BatchResult(0, 10L, BatchResult.Status.CREATED, 0L, List.of()),
+                BatchResult.error(1, null, BatchResult.Status.INVALID, List.of("email: Invalid email format")));
+        when(itemBatchService.createAll(any())).thenReturn(results);
+        List<Item> items = List.of(new Item(null, "a", "desc", "NEW", "a@a.com"), new Item(null, "b", "desc", "NEW", "bad"));
+
+        mockMvc.perform(post("/api/items/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(items)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status", is("CREATED")))
+                .andExpect(jsonPath("$[0].id", is(10)))
+                .andExpect(jsonPath("$[1].status", is("INVALID")))
+                .andExpect(jsonPath("$[1].errors[0]", is("email: Invalid email format")));
+    }
+
+    @Test
+    void testCreateItemsFromLines() throws Exception {
+        List<String> names = new ArrayList<>();
+        when(itemBatchService.createAll(any())).thenAnswer(inv -> {
+            Iterator<Item> items = inv.getArgument(0);
+            items.forEachRemaining(item -> names.add(item.getName()));
+            return List.of();
+        });
+        String body = objectMapper.writeValueAsString(new Item(null, "a", "desc", "NEW", "a@a.com")) + "\n"
+                + objectMapper.writeValueAsString(new Item(null, "b", "desc", "NEW", "b@b.com")) + "\n";
+
+        mockMvc.perform(post("/api/items/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content(body))
+                .andExpect(status().isOk());
+        assertEquals(List.of("a", "b"), names);
+
+        //a broken line
+        doAnswer(inv -> {
+            Iterator<Item> items = inv.getArgument(0);
+            items.forEachRemaining(item -> { });
+            return List.of();
+        }).when(itemBatchService).createAll(any());
+        mockMvc.perform(post("/api/items/batch")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"name\":\"a\"}\n{broken"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testUpdateItems() throws Exception {
+        when(itemBatchService.updateAll(any())).thenReturn(List.of(
+                new BatchResult(0, 1L, BatchResult.Status.UPDATED, 2L, List.of()),
+                BatchResult.error(1, 9L, BatchResult.Status.NOT_FOUND, List.of())));
+        List<Item> items = List.of(new Item(1L, "a", "desc", "NEW", "a@a.com"), new Item(9L, "b", "desc", "NEW", "b@b.com"));
+
+        mockMvc.perform(put("/api/items/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(items)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status", is("UPDATED")))
+                .andExpect(jsonPath("$[0].version", is(2)))
+                .andExpect(jsonPath("$[1].status", is("NOT_FOUND")));
+    }
+
+    @Test
+    void testDeleteItems() throws Exception {
+        when(itemBatchService.deleteAll(List.of(1L, 2L))).thenReturn(List.of(
+                BatchResult.error(0, 1L, BatchResult.Status.DELETED, List.of()),
+                BatchResult.error(1, 2L, BatchResult.Status.NOT_FOUND, List.of())));
+
+        mockMvc.perform(delete("/api/items/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[1,2]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status", is("DELETED")))
+                .andExpect(jsonPath("$[1].status", is("NOT_FOUND")));
+    }
+
+    @Test
+    void testStreamChanges() throws Exception {
+        when(changeRelay.subscribe(any())).thenAnswer(i -> new SseEmitter());
+
+        mockMvc.perform(get("/api/items/changes").param("since", "41").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted());
+        verify(changeRelay).subscribe(41L);
+
+        //a reconnect resumes after the last event the client got, not at the since of its url
+        mockMvc.perform(get("/api/items/changes").param("since", "41").header("Last-Event-ID", "57")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted());
+        verify(changeRelay).subscribe(57L);
     }
 }
@@ -0,0 +1,757 @@
+package com.siemens.internship;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ItemProcessingEngineTest {
+    //the database's time, on purpose far from the test machine's
+    private static final Instant NOW = Instant.parse("2025-06-01T12:00:00Z");
+
+    @Mock
+    private ItemRepository itemRepository;
+
+    @Mock
+    private ProcessingMarkRepository markRepository;
+
+    @Mock
+    private ProcessingFailureRepository failureRepository;
+
+    @Mock
+    private ProcessingLeases leases;
+
+    @Mock
+    private DatabaseClock clock;
+
+    @Mock
+    private ItemOutbox outbox;
+
+    @Spy
+    private TransactionOperations transactionOperations = TransactionOperations.withoutTransaction();
+
+    @Spy
+    private CacheManager cacheManager = new ConcurrentMapCacheManager(ItemService.ITEM_CACHE);
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private ItemProcessingEngine engine;
+
+    private BoundedTaskExecutor taskExecutor;
+
+    private BoundedTaskExecutor workerExecutor;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(engine, "chunkSize", 2);
+        ReflectionTestUtils.setField(engine, "parallelism", 2);
+        ReflectionTestUtils.setField(engine, "markLag", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(engine, "maxConcurrentRuns", 2);
+        ReflectionTestUtils.setField(engine, "retryAfter", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(engine, "maxAttempts", 3);
+        ReflectionTestUtils.setField(engine, "backoff", Duration.ofMillis(1));
+        ReflectionTestUtils.setField(engine, "maxBackoff", Duration.ofMillis(4));
+        taskExecutor = BoundedTaskExecutor.create(BoundedTaskExecutor.Mode.PLATFORM, 2, 2, Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(engine, "taskExecutor", taskExecutor);
+        workerExecutor = BoundedTaskExecutor.create("processor", BoundedTaskExecutor.Mode.PLATFORM, 3, 3, Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(engine, "workerExecutor", workerExecutor);
+        ReflectionTestUtils.setField(engine, "maxWorkers", 3);
+        when(itemRepository.findIdsAfter(anyLong(), any())).thenReturn(List.of());
+        when(clock.now()).thenReturn(NOW);
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        taskExecutor.destroy();
+        workerExecutor.destroy();
+    }
+
+    @Test
+    public void testProcessAll() {
+        when(itemRepository.findChangedIdsAfter(Long.MIN_VALUE, Instant.EPOCH, Limit.of(2))).thenReturn(List.of(1L, 2L));
+        when(itemRepository.markChanged(List.of(1L, 2L), "PROCESSED")).thenReturn(2);
+        List<ItemVersion> versions = List.of(new ItemVersion(1L, 4L), new ItemVersion(2L, 1L));
+        when(itemRepository.findVersions(List.of(1L, 2L), "PROCESSED")).thenReturn(versions);
+
+        ProcessingSummary result = engine.processAll().join();
+
+        assertEquals(new ProcessingSummary(2, 0), result);
+        //one set based update for the chunk, the items are neither saved nor read back
+        verify(itemRepository).markChanged(List.of(1L, 2L), "PROCESSED");
+        verify(itemRepository, never()).findAllById(any());
+        verify(itemRepository, never()).saveAll(any());
+        verify(itemRepository, never()).save(any());
+        //one status change for the chunk goes to the outbox, with the versions the update left the items at
+        verify(outbox).statusChanged("PROCESSED", versions);
+        verify(outbox, never()).savedAll(any());
+    }
+
+    @Test
+    void testChunkThatChangedNothingIsNotPublished() {
+        when(itemRepository.findChangedIdsAfter(Long.MIN_VALUE, Instant.EPOCH, Limit.of(2))).thenReturn(List.of(1L, 2L));
+        when(itemRepository.markChanged(List.of(1L, 2L), "PROCESSED")).thenReturn(0);
+
+        engine.processAll().join();
+
+        verify(itemRepository, never()).findVersions(any(), any());
+        verifyNoInteractions(outbox);
+    }
+
+    @Test
+    public void testProcessAllEvictsCachedItems() {
+        Cache cache = cacheManager.getCache(ItemService.ITEM_CACHE);
+        cache.put(1L, new Item(1L, "Item1", "desc", "NEW", "a@a.com"));
+        cache.put(3L, new Item(3L, "Item3", "desc", "NEW", "c@c.com"));
+        when(itemRepository.findChangedIdsAfter(Long.MIN_VALUE, Instant.EPOCH, Limit.of(2))).thenReturn(List.of(1L, 2L));
+
+        engine.processAll().join();
+
+        //only the processed ids lose their stale copy
+        assertNull(cache.get(1L));
+        assertNotNull(cache.get(3L));
+    }
+
+    @Test
+    public void testProcessAllInChunks() {
+        when(itemRepository.findChangedIdsAfter(Long.MIN_VALUE, Instant.EPOCH, Limit.of(2))).thenReturn(List.of(1L, 2L));
+        when(itemRepository.findChangedIdsAfter(2L, Instant.EPOCH, Limit.of(2))).thenReturn(List.of(3L, 4L));
+        when(itemRepository.findChangedIdsAfter(4L, Instant.EPOCH, Limit.of(2))).thenReturn(List.of(5L));
+        when(itemRepository.markChanged(anyList(), eq("PROCESSED"))).thenAnswer(i -> ((List<?>) i.getArgument(0)).size());
+
+        ProcessingSummary result = engine.processAll().join();
+
+        //every lane's chunks are counted
+        assertEquals(new ProcessingSummary(5, 0), result);
+        verify(itemRepository).markChanged(List.of(1L, 2L), "PROCESSED");
+        verify(itemRepository).markChanged(List.of(3L, 4L), "PROCESSED");
+        verify(itemRepository).markChanged(List.of(5L), "PROCESSED");
+    }
+
+    @Test
+    void testProcessAllFallsBackWhenBulkUpdateFails() {
+        Item item1 = new Item(1L, "Item1", "desc", "NEW", "a@a.com");
+        when(itemRepository.findChangedIdsAfter(Long.MIN_VALUE, Instant.EPOCH, Limit.of(2))).thenReturn(List.of(1L, 2L));
+        when(itemRepository.markChanged(List.of(1L, 2L), "PROCESSED")).thenThrow(new RuntimeException("DB error"));
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item1));
+        when(itemRepository.findById(2L)).thenReturn(Optional.empty());
+        when(itemRepository.save(item1)).thenReturn(item1);
+
+        ProcessingSummary result = engine.processAll().join();
+
+        //the deleted item is neither processed nor failed
+        assertEquals(new ProcessingSummary(1, 0), result);
+        assertEquals("PROCESSED", item1.getStatus());
+        verify(outbox).saved(item1);
+    }
+
+    @Test
+    void testTransientFailureIsRetried() {
+        Item item1 = new Item(1L, "Item1", "desc", "NEW", "a@a.com");
+        when(itemRepository.findChangedIdsAfter(Long.MIN_VALUE, Instant.EPOCH, Limit.of(2))).thenReturn(List.of(1L));
+        when(itemRepository.markChanged(List.of(1L), "PROCESSED")).thenThrow(new QueryTimeoutException("timeout"));
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item1));
+        when(itemRepository.save(item1))
+                .thenThrow(new QueryTimeoutException("timeout"))
+                .thenReturn(item1);
+
+        ProcessingSummary result = engine.processAll().join();
+
+        assertEquals(new ProcessingSummary(1, 0), result);
+        verify(itemRepository, times(2)).save(item1);
+        verify(failureRepository, never()).saveAll(any());
+        verify(markRepository).save(any());
+    }
+
+    @Test
+    void testItemThatKeepsFailingIsDeadLettered() {
+        Item item1 = new Item(1L, "Item1", "desc", "NEW", "a@a.com");
+        Item item2 = new Item(2L, "Item2", "desc", "NEW", "b@b.com");
+        when(itemRepository.findChangedIdsAfter(Long.MIN_VALUE, Instant.EPOCH, Limit.of(2))).thenReturn(List.of(1L, 2L));
+        when(itemRepository.markChanged(List.of(1L, 2L), "PROCESSED")).thenThrow(new QueryTimeoutException("timeout"));
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item1));
+        when(itemRepository.findById(2L)).thenReturn(Optional.of(item2));
+        when(itemRepository.save(item1)).thenThrow(new QueryTimeoutException("timeout"));
+        when(itemRepository.save(item2)).thenReturn(item2);
+        List<ItemProcessingEngine.ChunkResult> results = Collections.synchronizedList(new ArrayList<>());
+        ItemProcessingEngine.ChunkListener listener = new ItemProcessingEngine.ChunkListener() {
+            @Override
+            public void onChunk(ItemProcessingEngine.ChunkResult result) {
+                results.add(result);
+            }
+
+            @Override
+            public String jobId() {
+                return "job-1";
+            }
+        };
+
+        engine.runChanged(Long.MIN_VALUE, false, listener).join();
+
+        assertEquals(1, results.get(0).processed());
+        assertEquals(1, results.get(0).failed());
+        verify(itemRepository, times(3)).save(item1);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ProcessingFailure>> failures = ArgumentCaptor.forClass(List.class);
+        verify(failureRepository).saveAll(failures.capture());
+        ProcessingFailure failure = failures.getValue().get(0);
+        assertEquals(1L, failure.getItemId());
+        assertEquals("job-1", failure.getJobId());
+        assertEquals(3, failure.getAttempts());
+        assertEquals("QueryTimeoutException: timeout", failure.getCause());
+        //the failed item is left for the next run
+        verify(markRepository, never()).save(any());
+    }
+
+    @Test
+    void testPermanentFailureIsNotRetried() {
+        Item item1 = new Item(1L, "Item1", "desc", "NEW", "a@a.com");
+        when(itemRepository.findIdsAfter(Long.MIN_VALUE, Limit.of(2))).thenReturn(List.of(1L));
+        when(itemRepository.findAllById(List.of(1L))).thenReturn(List.of(item1));
+        when(itemRepository.saveAll(anyList())).thenThrow(new RuntimeException("DB error"));
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item1));
+        when(itemRepository.save(item1)).thenThrow(new IllegalStateException("constraint"));
+
+        engine.processAll(inChunksOfTwo(1, item -> item.setStatus("DONE"))).join();
+
+        verify(itemRepository, times(1)).save(item1);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ProcessingFailure>> failures = ArgumentCaptor.forClass(List.class);
+        verify(failureRepository).saveAll(failures.capture());
+        assertEquals(1, failures.getValue().get(0).getAttempts());
+        assertNull(failures.getValue().get(0).getJobId());
+    }
+
+    @Test
+    void testStaleItemIsNotRetried() {
+        Item item1 = new Item(1L, "Item1", "desc", "NEW", "a@a.com");
+        when(itemRepository.findIdsAfter(Long.MIN_VALUE, Limit.of(2))).thenReturn(List.of(1L));
+        when(itemRepository.findAllById(List.of(1L))).thenReturn(List.of(item1));
+        when(itemRepository.saveAll(anyList())).thenThrow(new RuntimeException("DB error"));
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item1));
+        when(itemRepository.save(item1)).thenThrow(new OptimisticLockingFailureException("stale"));
+
+        engine.processAll(inChunksOfTwo(1, item -> item.setStatus("DONE"))).join();
+
+        //the item changed since it was read, saving the same copy again can't succeed
+        verify(itemRepository, times(1)).save(item1);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ProcessingFailure>> failures = ArgumentCaptor.forClass(List.class);
+        verify(failureRepository).saveAll(failures.capture());
+        assertEquals(1, failures.getValue().get(0).getAttempts());
+        assertEquals("OptimisticLockingFailureException: stale", failures.getValue().get(0).getCause());
+    }
+
+    //a processor that works on chunks of two like the bulk path in these tests
+    private static ItemProcessor inChunksOfTwo(int concurrency, ItemProcessor step) {
+        return new ItemProcessor() {
+            @Override
+            public void process(Item item) {
+                step.process(item);
+            }
+
+            @Override
+            public int concurrency() {
+                return concurrency;
+            }
+
+            @Override
+            public int chunkSize() {
+                return 2;
+            }
+        };
+    }
+
+    @Test
+    public void testProcessAllWithCustomProcessor() {
+        Item item1 = new Item(1L, "Item1", "desc", "NEW", "test1@example.com");
+        Item item2 = new Item(2L, "Item2", "desc", "NEW", "test2@example.com");
+        when(itemRepository.findIdsAfter(Long.MIN_VALUE, Limit.of(2))).thenReturn(List.of(1L, 2L));
+        when(itemRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(item1, item2));
+        when(itemRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+
+        ProcessingSummary result = engine.processAll(inChunksOfTwo(1, item -> item.setName(item.getName().toUpperCase()))).join();
+
+        assertEquals(new ProcessingSummary(2, 0), result);
+        assertEquals("ITEM1", item1.getName());
+        assertEquals("ITEM2", item2.getName());
+        //only the default transition marks items as processed, the next incremental run still picks these up
+        assertNull(item1.getProcessedAt());
+        //one save and one flush for the whole chunk, nothing per row
+        verify(itemRepository).saveAll(anyList());
+        verify(itemRepository).flush();
+        verify(itemRepository, never()).updateStatusInRange(any(), any(), any());
+        verify(itemRepository, never()).findById(any());
+        verify(itemRepository, never()).save(any());
+        //the saved items go to the outbox in the same transaction
+        verify(outbox).savedAll(List.of(item1, item2));
+    }
+
+    @Test
+    void testProcessAllWithCustomProcessorAndMissingItem() {
+        Item item1 = new Item(1L, "Item1", "desc", "NEW", "a@a.com");
+        when(itemRepository.findIdsAfter(Long.MIN_VALUE, Limit.of(2))).thenReturn(List.of(1L, 2L));
+        when(itemRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(item1));
+        when(itemRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+
+        ProcessingSummary result = engine.processAll(inChunksOfTwo(1, item -> item.setStatus("DONE"))).join();
+
+        assertEquals(new ProcessingSummary(1, 0), result);
+        assertEquals("DONE", item1.getStatus());
+    }
+
+    @Test
+    void testItemDeletedDuringProcessingIsNotSaved() {
+        Item item1 = new Item(1L, "Item1", "desc", "NEW", "a@a.com");
+        Item item2 = new Item(2L, "Item2", "desc", "NEW", "b@b.com");
+        when(itemRepository.findIdsAfter(Long.MIN_VALUE, Limit.of(2))).thenReturn(List.of(1L, 2L));
+        //both are fetched, only item1 is still there when the chunk is saved
+        when(itemRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(item1, item2), List.of(item1));
+        when(itemRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+
+        ProcessingSummary result = engine.processAll(inChunksOfTwo(1, item -> item.setStatus("DONE"))).join();
+
+        assertEquals(new ProcessingSummary(1, 0), result);
+        verify(itemRepository).saveAll(List.of(item1));
+    }
+
+    @Test
+    void testProcessAllWithCustomProcessorSaveFailsForOneItem() {
+        Item item1 = new Item(1L, "Item1", "desc", "NEW", "a@a.com");
+        Item item2 = new Item(2L, "Item2", "desc", "NEW", "b@b.com");
+        when(itemRepository.findIdsAfter(Long.MIN_VALUE, Limit.of(2))).thenReturn(List.of(1L, 2L));
+        when(itemRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(item1, item2));
+        when(itemRepository.saveAll(anyList())).thenThrow(new RuntimeException("DB error"));
+        //the chunk is saved again item by item
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item1));
+        when(itemRepository.findById(2L)).thenReturn(Optional.of(item2));
+        when(itemRepository.save(item1)).thenThrow(new RuntimeException("DB error"));
+        when(itemRepository.save(item2)).thenReturn(item2);
+
+        ProcessingSummary result = engine.processAll(inChunksOfTwo(1, item -> item.setStatus("DONE"))).join();
+
+        assertEquals(new ProcessingSummary(1, 1), result);
+        verify(itemRepository).save(item2);
+    }
+
+    @Test
+    void testProcessorFailureFailsOnlyThatItem() {
+        Item item1 = new Item(1L, "Item1", "desc", "NEW", "a@a.com");
+        Item item2 = new Item(2L, "Item2", "desc", "NEW", "b@b.com");
+        when(itemRepository.findIdsAfter(Long.MIN_VALUE, Limit.of(2))).thenReturn(List.of(1L, 2L));
+        when(itemRepository.findAllById(List.of(1L, 2L))).thenReturn(List.of(item1, item2));
+        when(itemRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+        List<ItemProcessingEngine.ChunkResult> results = Collections.synchronizedList(new ArrayList<>());
+
+        engine.run(Long.MIN_VALUE, inChunksOfTwo(1, item -> {
+            if (item.getId() == 1L) {
+                throw new IllegalStateException("bad item");
+            }
+            item.setStatus("DONE");
+        }), true, results::add).join();
+
+        assertEquals(1, results.size());
+        assertEquals(List.of(item2), results.get(0).items());
+        assertEquals(1, results.get(0).failed());
+        assertEquals(2L, results.get(0).checkpoint());
+        verify(itemRepository).saveAll(List.of(item2));
+    }
+
+    @Test
+    void testProcessorRunsChunksConcurrently() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch allStarted = new CountDownLatch(3);
+        stubChunks(6);
+
+        ProcessingSummary result = engine.processAll(inChunksOfTwo(3, item -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            allStarted.countDown();
+            try {
+                //keeps each worker busy until all three have an item
+                allStarted.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+        })).join();
+
+        assertEquals(new ProcessingSummary(12, 0), result);
+        assertEquals(3, maxRunning.get());
+    }
+
+    @Test
+    void testProcessorConcurrencyIsCappedAtMaxWorkers() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        stubChunks(20);
+
+        ProcessingSummary result = engine.processAll(inChunksOfTwo(100, item -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            threads.add(Thread.currentThread().getName());
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+        })).join();
+
+        assertEquals(new ProcessingSummary(40, 0), result);
+        //a processor asking for 100 threads gets the three of the worker executor
+        assertTrue(maxRunning.get() <= 3, maxRunning.get() + " workers ran at once");
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("processor-task-")), threads.toString());
+    }
+
+    @Test
+    void testSlowPersistHoldsBackFetching() {
+        AtomicInteger fetched = new AtomicInteger();
+        AtomicInteger saved = new AtomicInteger();
+        AtomicInteger maxAhead = new AtomicInteger();
+        stubChunks(20);
+        when(itemRepository.findAllById(anyList())).thenAnswer(i -> {
+            List<Long> ids = i.getArgument(0);
+            return ids.stream().map(id -> new Item(id, "Item" + id, "desc", "NEW", "a@a.com")).toList();
+        });
+        when(itemRepository.findIdsAfter(anyLong(), any())).thenAnswer(i -> {
+            long after = i.getArgument(0);
+            maxAhead.accumulateAndGet(fetched.incrementAndGet() - saved.get(), Math::max);
+            return after >= 40 ? List.of() : List.of(after + 1, after + 2);
+        });
+        when(itemRepository.saveAll(anyList())).thenAnswer(i -> {
+            Thread.sleep(10);
+            saved.incrementAndGet();
+            return i.getArgument(0);
+        });
+
+        engine.run(0L, inChunksOfTwo(1, item -> item.setStatus("DONE")), false, result -> {
+        }).join();
+
+        assertEquals(20, saved.get());
+        //a queue slot either side of the worker, plus the chunks being fetched, processed and saved
+        assertTrue(maxAhead.get() <= 5, "fetched " + maxAhead.get() + " chunks ahead of persisting");
+    }
+
+    @Test
+    void testPipelineFailsWhenIdsCannotBeRead() {
+        when(itemRepository.findIdsAfter(eq(Long.MIN_VALUE), any())).thenThrow(new RuntimeException("DB error"));
+
+        assertThrows(RuntimeException.class, () -> engine.processAll(inChunksOfTwo(2, item -> item.setStatus("DONE"))).join());
+    }
+
+    @Test
+    void testCancelledPipelineStops() {
+        engine.run(Long.MIN_VALUE, inChunksOfTwo(2, item -> item.setStatus("DONE")), false, new ItemProcessingEngine.ChunkListener() {
+            @Override
+            public void onChunk(ItemProcessingEngine.ChunkResult result) {
+                fail("no chunk should run");
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        }).join();
+
+        verify(itemRepository, never()).findIdsAfter(anyLong(), any());
+    }
+
+    //ids 1 to 2 * chunks in chunks of two, every item found and saved
+    private void stubChunks(int chunks) {
+        when(itemRepository.findIdsAfter(anyLong(), any())).thenAnswer(i -> {
+            long after = i.getArgument(0);
+            long first = after == Long.MIN_VALUE ? 1 : after + 1;
+            return first > 2L * chunks ? List.of() : List.of(first, first + 1);
+        });
+        when(itemRepository.findAllById(anyList())).thenAnswer(i -> {
+            List<Long> ids = i.getArgument(0);
+            return ids.stream().map(id -> new Item(id, "Item" + id, "desc", "NEW", "a@a.com")).toList();
+        });
+        when(itemRepository.saveAll(anyList())).thenAnswer(i -> i.getArgument(0));
+    }
+
+    @Test
+    void testProcessAllRecordsStagesAndOutcomes() {
+        Item item1 = new Item(1L, "Item1", "desc", "NEW", "a@a.com");
+        Item item2 = new Item(2L, "Item2", "desc", "NEW", "b@b.com");
+        when(itemRepository.findIdsAfter(Long.MIN_VALUE, Limit.of(2))).thenReturn(List.of(1L, 2L, 3L));
+        when(itemRepository.findAllById(List.of(1L, 2L, 3L))).thenReturn(List.of(item1, item2));
+        when(itemRepository.saveAll(anyList())).thenThrow(new RuntimeException("DB error"));
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item1));
+        when(itemRepository.findById(2L)).thenReturn(Optional.of(item2));
+        when(itemRepository.save(item1)).thenThrow(new RuntimeException("DB error"));
+        when(itemRepository.save(item2)).thenReturn(item2);
+
+        engine.processAll(inChunksOfTwo(1, item -> item.setStatus("DONE"))).join();
+
+        assertEquals(1, meterRegistry.get("items.processing.items").tag("outcome", "processed").counter().count());
+        assertEquals(1, meterRegistry.get("items.processing.items").tag("outcome", "failed").counter().count());
+        assertEquals(1, meterRegistry.get("items.processing.items").tag("outcome", "skipped").counter().count());
+        assertEquals(1, meterRegistry.get("items.processing.stage").tag("stage", "transform").timer().count());
+        //the id claims, including the empty one that ends the run, are part of the fetch stage
+        assertTrue(meterRegistry.get("items.processing.stage").tag("stage", "fetch").timer().count() >= 3);
+    }
+
+    @Test
+    void testProcessAllEmpty() {
+        ProcessingSummary result = engine.processAll().join();
+
+        assertEquals(new ProcessingSummary(0, 0), result);
+        verify(itemRepository, never()).findAllById(any());
+        verify(itemRepository, never()).markChanged(any(), any());
+        verify(itemRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void testProcessAllFailsWhenIdsCannotBeRead() {
+        when(itemRepository.findChangedIdsAfter(eq(Long.MIN_VALUE), any(), any())).thenThrow(new RuntimeException("DB error"));
+
+        assertThrows(RuntimeException.class, () -> engine.processAll().join());
+    }
+
+    @Test
+    void testRunFromCheckpointReportsProgress() {
+        when(itemRepository.findIdsAfter(10L, Limit.of(2))).thenReturn(List.of(11L, 12L));
+        when(itemRepository.findIdsAfter(12L, Limit.of(2))).thenReturn(List.of(13L));
+        when(itemRepository.updateStatusInRange(11L, 12L, "PROCESSED")).thenReturn(2);
+        when(itemRepository.updateStatusInRange(13L, 13L, "PROCESSED")).thenReturn(1);
+        List<ItemProcessingEngine.ChunkResult> results = Collections.synchronizedList(new ArrayList<>());
+
+        engine.run(10L, ItemProcessingEngine.MARK_PROCESSED, false, results::add).join();
+
+        assertEquals(3, results.stream().mapToInt(ItemProcessingEngine.ChunkResult::processed).sum());
+        //the counts come from the update, the items are never read back
+        verify(itemRepository, never()).findAllById(any());
+        //once everything finished the checkpoint is the last id
+        assertEquals(13L, results.stream().mapToLong(ItemProcessingEngine.ChunkResult::checkpoint).max().getAsLong());
+    }
+
+    @Test
+    void testRunChangedOnlyClaimsItemsChangedSinceTheMark() {
+        Instant mark = Instant.parse("2025-01-01T00:00:00Z");
+        when(markRepository.findById(ItemProcessingEngine.CHANGES_MARK))
+                .thenReturn(Optional.of(new ProcessingMark(ItemProcessingEngine.CHANGES_MARK, mark)));
+        when(itemRepository.findChangedIdsAfter(5L, mark, Limit.of(2))).thenReturn(List.of(7L, 11L));
+        when(itemRepository.markChanged(List.of(7L, 11L), "PROCESSED")).thenReturn(2);
+        List<ItemProcessingEngine.ChunkResult> results = Collections.synchronizedList(new ArrayList<>());
+
+        engine.runChanged(5L, false, results::add).join();
+
+        assertEquals(1, results.size());
+        assertEquals(2, results.get(0).processed());
+        assertEquals(11L, results.get(0).checkpoint());
+        verify(itemRepository, never()).findIdsAfter(anyLong(), any());
+        //the gaps between changed ids are other items, so the chunk is updated by id and not by range
+        verify(itemRepository, never()).updateStatusInRange(any(), any(), any());
+        //the mark moves up to the start of the run by the database's clock, less the lag
+        ArgumentCaptor<ProcessingMark> saved = ArgumentCaptor.forClass(ProcessingMark.class);
+        verify(markRepository).save(saved.capture());
+        assertEquals(NOW.minus(Duration.ofMinutes(1)), saved.getValue().getProcessedUntil());
+    }
+
+    @Test
+    void testRunChangedStartsFromTheBeginningWithoutMark() {
+        engine.runChanged(Long.MIN_VALUE, false, result -> { }).join();
+
+        verify(itemRepository, atLeastOnce()).findChangedIdsAfter(Long.MIN_VALUE, Instant.EPOCH, Limit.of(2));
+        verify(markRepository).save(any());
+    }
+
+    @Test
+    void testRunChangedNeverMovesTheMarkBack() {
+        Instant future = NOW.plus(Duration.ofHours(1));
+        when(markRepository.findById(ItemProcessingEngine.CHANGES_MARK))
+                .thenReturn(Optional.of(new ProcessingMark(ItemProcessingEngine.CHANGES_MARK, future)));
+
+        engine.runChanged(Long.MIN_VALUE, false, result -> { }).join();
+
+        verify(markRepository, never()).save(any());
+    }
+
+    @Test
+    void testCancelledRunChangedKeepsTheMark() {
+        when(itemRepository.findChangedIdsAfter(Long.MIN_VALUE, Instant.EPOCH, Limit.of(2))).thenReturn(List.of(1L, 2L));
+        ItemProcessingEngine.ChunkListener listener = new ItemProcessingEngine.ChunkListener() {
+            @Override
+            public void onChunk(ItemProcessingEngine.ChunkResult result) {
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        };
+
+        engine.runChanged(Long.MIN_VALUE, false, listener).join();
+
+        verify(markRepository, never()).save(any());
+    }
+
+    @Test
+    void testPartitionedRunSkipsPartitionsLeasedElsewhere() {
+        ReflectionTestUtils.setField(engine, "partitionSize", 10L);
+        when(leases.newOwner()).thenReturn("node/run");
+        //ids 3 and 4 in partition 0, 12 in partition 1 which another run holds, 25 in partition 2
+        when(itemRepository.findChangedIdsAfter(Long.MIN_VALUE, Instant.EPOCH, Limit.of(1))).thenReturn(List.of(3L));
+        when(itemRepository.findChangedIdsAfter(9L, Instant.EPOCH, Limit.of(1))).thenReturn(List.of(12L));
+        when(itemRepository.findChangedIdsAfter(19L, Instant.EPOCH, Limit.of(1))).thenReturn(List.of(25L));
+        when(itemRepository.findChangedIdsBetween(Long.MIN_VALUE, 9L, Instant.EPOCH, Limit.of(2))).thenReturn(List.of(3L, 4L));
+        when(itemRepository.findChangedIdsBetween(19L, 29L, Instant.EPOCH, Limit.of(2))).thenReturn(List.of(25L));
+        when(leases.claim(anyLong(), eq("node/run"))).thenAnswer(i -> (long) i.getArgument(0) != 1L);
+        when(leases.renew(anyLong(), eq("node/run"))).thenReturn(true);
+        List<ItemProcessingEngine.ChunkResult> results = Collections.synchronizedList(new ArrayList<>());
+
+        engine.runChanged(Long.MIN_VALUE, false, results::add).join();
+
+        verify(itemRepository).markChanged(List.of(3L, 4L), "PROCESSED");
+        verify(itemRepository).markChanged(List.of(25L), "PROCESSED");
+        verify(itemRepository, never()).findChangedIdsBetween(eq(9L), any(), any(), any());
+        verify(leases).release(0L, "node/run");
+        verify(leases).release(2L, "node/run");
+        verify(leases, never()).release(eq(1L), any());
+        //the partitions this run worked through get their own marks
+        ArgumentCaptor<ProcessingMark> saved = ArgumentCaptor.forClass(ProcessingMark.class);
+        verify(markRepository, times(2)).save(saved.capture());
+        assertEquals(List.of("items:0", "items:2"), saved.getAllValues().stream().map(ProcessingMark::getName).sorted().toList());
+        assertTrue(saved.getAllValues().stream().allMatch(mark -> mark.getProcessedUntil().equals(NOW.minus(Duration.ofMinutes(1)))));
+        //the shared mark stays, the other run may have started before some of partition 1's changes
+        verify(markRepository, never()).save(argThat(mark -> mark.getName().equals(ItemProcessingEngine.CHANGES_MARK)));
+    }
+
+    @Test
+    void testPartitionedRunMovesTheSharedMarkAsFarAsOtherRunsGot() {
+        ReflectionTestUtils.setField(engine, "partitionSize", 10L);
+        when(leases.newOwner()).thenReturn("node/run");
+        Instant shared = Instant.parse("2025-06-01T10:00:00Z");
+        Instant otherRun = Instant.parse("2025-06-01T11:00:00Z");
+        when(markRepository.findById(ItemProcessingEngine.CHANGES_MARK))
+                .thenReturn(Optional.of(new ProcessingMark(ItemProcessingEngine.CHANGES_MARK, shared)));
+        //partition 0 is ahead of the shared mark from an earlier run, partition 1 was finished by another run
+        Instant partition0 = Instant.parse("2025-06-01T10:30:00Z");
+        when(markRepository.findById("items:0")).thenReturn(Optional.of(new ProcessingMark("items:0", partition0)));
+        when(markRepository.findById("items:1")).thenReturn(Optional.of(new ProcessingMark("items:1", otherRun)));
+        when(itemRepository.findChangedIdsAfter(Long.MIN_VALUE, shared, Limit.of(1))).thenReturn(List.of(3L));
+        when(itemRepository.findChangedIdsAfter(9L, shared, Limit.of(1))).thenReturn(List.of(12L));
+        when(itemRepository.findChangedIdsBetween(Long.MIN_VALUE, 9L, partition0, Limit.of(2))).thenReturn(List.of(3L));
+        when(leases.claim(anyLong(), eq("node/run"))).thenAnswer(i -> (long) i.getArgument(0) != 1L);
+        when(leases.renew(anyLong(), eq("node/run"))).thenReturn(true);
+
+        engine.runChanged(Long.MIN_VALUE, false, result -> { }).join();
+
+        //partition 0's changes are looked for from its own mark
+        verify(itemRepository).markChanged(List.of(3L), "PROCESSED");
+        //the shared mark moves up to where the other run got, partition marks it caught up with are dropped
+        ArgumentCaptor<ProcessingMark> saved = ArgumentCaptor.forClass(ProcessingMark.class);
+        verify(markRepository, times(2)).save(saved.capture());
+        assertEquals("items:0", saved.getAllValues().get(0).getName());
+        assertEquals(NOW.minus(Duration.ofMinutes(1)), saved.getAllValues().get(0).getProcessedUntil());
+        assertEquals(ItemProcessingEngine.CHANGES_MARK, saved.getAllValues().get(1).getName());
+        assertEquals(otherRun, saved.getAllValues().get(1).getProcessedUntil());
+        verify(markRepository).deleteUpTo("items:", otherRun);
+    }
+
+    @Test
+    void testPartitionWithFailedItemsKeepsItsMark() {
+        ReflectionTestUtils.setField(engine, "partitionSize", 10L);
+        when(leases.newOwner()).thenReturn("node/run");
+        when(itemRepository.findChangedIdsAfter(Long.MIN_VALUE, Instant.EPOCH, Limit.of(1))).thenReturn(List.of(3L));
+        when(itemRepository.findChangedIdsAfter(9L, Instant.EPOCH, Limit.of(1))).thenReturn(List.of(12L));
+        when(itemRepository.findChangedIdsBetween(Long.MIN_VALUE, 9L, Instant.EPOCH, Limit.of(2))).thenReturn(List.of(3L));
+        when(itemRepository.findChangedIdsBetween(9L, 19L, Instant.EPOCH, Limit.of(2))).thenReturn(List.of(12L));
+        when(itemRepository.markChanged(List.of(3L), "PROCESSED")).thenThrow(new IllegalStateException("constraint"));
+        when(itemRepository.findById(3L)).thenThrow(new IllegalStateException("constraint"));
+        when(itemRepository.markChanged(List.of(12L), "PROCESSED")).thenReturn(1);
+        when(leases.claim(anyLong(), eq("node/run"))).thenReturn(true);
+        when(leases.renew(anyLong(), eq("node/run"))).thenReturn(true);
+
+        engine.runChanged(Long.MIN_VALUE, false, result -> { }).join();
+
+        //only partition 1 moves, partition 0 and with it the shared mark stay for the next run to retry item 3
+        ArgumentCaptor<ProcessingMark> saved = ArgumentCaptor.forClass(ProcessingMark.class);
+        verify(markRepository).save(saved.capture());
+        assertEquals("items:1", saved.getValue().getName());
+    }
+
+    @Test
+    void testCountChanged() {
+        when(itemRepository.countChangedSince(Instant.EPOCH)).thenReturn(3L);
+
+        assertEquals(3, engine.countChanged());
+    }
+
+    @Test
+    void testRunsBeyondTheLimitAreRejected() throws Exception {
+        ReflectionTestUtils.setField(engine, "maxConcurrentRuns", 1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(itemRepository.findIdsAfter(Long.MIN_VALUE, Limit.of(2))).thenAnswer(i -> {
+            release.await(5, TimeUnit.SECONDS);
+            return List.of();
+        });
+        CompletableFuture<Void> first = engine.run(Long.MIN_VALUE, ItemProcessingEngine.MARK_PROCESSED, false, result -> { });
+
+        ProcessingRejectedException rejected = assertThrows(ProcessingRejectedException.class, () -> engine.processAll());
+        assertEquals(Duration.ofSeconds(30), rejected.getRetryAfter());
+        verify(itemRepository, never()).findChangedIdsAfter(anyLong(), any(), any());
+
+        release.countDown();
+        first.join();
+        //the finished run gave its slot back
+        assertEquals(new ProcessingSummary(0, 0), engine.processAll().join());
+    }
+
+    @Test
+    void testCancelledRunStops() {
+        when(itemRepository.findIdsAfter(Long.MIN_VALUE, Limit.of(2))).thenReturn(List.of(1L, 2L));
+
+        engine.run(Long.MIN_VALUE, ItemProcessingEngine.MARK_PROCESSED, false, new ItemProcessingEngine.ChunkListener() {
+            @Override
+            public void onChunk(ItemProcessingEngine.ChunkResult result) {
+                fail("no chunk should run");
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        }).join();
+
+        verify(itemRepository, never()).findIdsAfter(anyLong(), any());
+    }
+}
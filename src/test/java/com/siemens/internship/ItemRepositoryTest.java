@@ -0,0 +1,176 @@
+package com.siemens.internship;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({JpaConfig.class, DatabaseClock.class})
+public class ItemRepositoryTest {
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DatabaseClock clock;
+
+    private List<Long> ids;
+
+    @BeforeEach
+    public void setUp() {
+        ids = itemRepository.saveAll(List.of(
+                new Item(null, "apple", "desc", "NEW", "a@a.com"),
+                new Item(null, "apricot", "desc", "PROCESSED", "b@b.com"),
+                new Item(null, "a_b", "desc", null, "a@a.com"),
+                new Item(null, "banana", "desc", "NEW", "a@a.com"))).stream().map(Item::getId).toList();
+        itemRepository.flush();
+    }
+
+    private List<Long> filter(ItemFilter filter, long afterId, int limit) {
+        return itemRepository.findBy(filter.after(afterId), query -> query.sortBy(Sort.by("id")).limit(limit).all())
+                .stream().map(Item::getId).toList();
+    }
+
+    @Test
+    void testFilters() {
+        assertEquals(List.of(ids.get(0), ids.get(3)), filter(new ItemFilter("NEW", null, null, null), Long.MIN_VALUE, 10));
+        //items without a status count as not processed
+        assertEquals(List.of(ids.get(0), ids.get(2), ids.get(3)), filter(new ItemFilter(null, "PROCESSED", null, null), Long.MIN_VALUE, 10));
+        assertEquals(List.of(ids.get(0), ids.get(2), ids.get(3)), filter(new ItemFilter(null, null, "a@a.com", null), Long.MIN_VALUE, 10));
+        assertEquals(List.of(ids.get(0), ids.get(1), ids.get(2)), filter(new ItemFilter(null, null, null, "a"), Long.MIN_VALUE, 10));
+        //the underscore is matched literally, not as a wildcard
+        assertEquals(List.of(ids.get(2)), filter(new ItemFilter(null, null, null, "a_"), Long.MIN_VALUE, 10));
+        assertEquals(List.of(ids.get(0)), filter(new ItemFilter("NEW", null, "a@a.com", "ap"), Long.MIN_VALUE, 10));
+    }
+
+    @Test
+    void testFilteredKeysetPages() {
+        ItemFilter notProcessed = new ItemFilter(null, "PROCESSED", null, null);
+
+        List<Long> first = filter(notProcessed, Long.MIN_VALUE, 2);
+        List<Long> second = filter(notProcessed, first.get(1), 2);
+
+        assertEquals(List.of(ids.get(0), ids.get(2)), first);
+        assertEquals(List.of(ids.get(3)), second);
+    }
+
+    @Test
+    void testChangedIds() {
+        assertEquals(List.of(ids.get(0), ids.get(1)), itemRepository.findChangedIdsAfter(Long.MIN_VALUE, Instant.EPOCH, Limit.of(2)));
+        assertEquals(List.of(ids.get(2), ids.get(3)), itemRepository.findChangedIdsAfter(ids.get(1), Instant.EPOCH, Limit.of(2)));
+        assertEquals(4, itemRepository.countChangedSince(Instant.EPOCH));
+        //nothing changed after the mark
+        assertEquals(List.of(), itemRepository.findChangedIdsAfter(Long.MIN_VALUE, Instant.now().plusSeconds(60), Limit.of(2)));
+    }
+
+    @Test
+    void testMarkChangedOnlyTouchesItemsWaitingForProcessing() {
+        assertEquals(2, itemRepository.markChanged(List.of(ids.get(0), ids.get(1)), "PROCESSED"));
+        assertNotNull(itemRepository.findById(ids.get(0)).orElseThrow().getProcessedAt());
+        assertEquals(List.of(ids.get(2), ids.get(3)), itemRepository.findChangedIdsAfter(Long.MIN_VALUE, Instant.EPOCH, Limit.of(10)));
+        //a second pass finds nothing left to do
+        assertEquals(0, itemRepository.markChanged(List.of(ids.get(0), ids.get(1)), "PROCESSED"));
+        //the ids and versions the update left the PROCESSED items at, a_b has another status
+        Item apple = itemRepository.findById(ids.get(0)).orElseThrow();
+        Item apricot = itemRepository.findById(ids.get(1)).orElseThrow();
+        assertEquals(List.of(new ItemVersion(apple.getId(), apple.getVersion()), new ItemVersion(apricot.getId(), apricot.getVersion())),
+                itemRepository.findVersions(List.of(ids.get(0), ids.get(1), ids.get(2)), "PROCESSED"));
+        assertEquals(1L, apple.getVersion());
+    }
+
+    @Test
+    void testUpdateMakesAProcessedItemChangedAgain() {
+        //the database clock stands still within the test transaction, so the items are processed in the past
+        Instant past = Instant.now().minusSeconds(3600);
+        jdbcTemplate.update("UPDATE item SET last_modified = ?, processed_at = ?", past, past);
+        assertEquals(0, itemRepository.countChangedSince(Instant.EPOCH));
+
+        itemRepository.update(ids.get(2), new Item(null, "a_b", "new desc", "NEW", "a@a.com"));
+
+        assertEquals(List.of(ids.get(2)), itemRepository.findChangedIdsAfter(Long.MIN_VALUE, Instant.EPOCH, Limit.of(10)));
+    }
+
+    @Test
+    void testUpdatedItemIsReadBackAsStored() {
+        Instant past = Instant.now().minusSeconds(3600);
+        jdbcTemplate.update("UPDATE item SET last_modified = ?", past);
+        //loaded before the update, in the same transaction like ItemService.update
+        Item before = itemRepository.findById(ids.get(0)).orElseThrow();
+
+        itemRepository.update(ids.get(0), new Item(null, "apple", "new desc", "NEW", "a@a.com"));
+        Item stored = itemRepository.findById(ids.get(0)).orElseThrow();
+
+        //the update cleared the loaded entity, so the row comes back with what the database set
+        assertEquals(before.getVersion() + 1, stored.getVersion());
+        assertEquals("new desc", stored.getDescription());
+        assertEquals(clock.now(), stored.getLastModified());
+    }
+
+    @Test
+    void testStatusUpdateSkipsItemsThatAlreadyHaveIt() {
+        //only the three unprocessed rows change, the processed one keeps its version
+        assertEquals(3, itemRepository.updateStatusInRange(ids.get(0), ids.get(3), "PROCESSED"));
+        assertEquals(0L, itemRepository.findById(ids.get(1)).orElseThrow().getVersion());
+        assertEquals(1L, itemRepository.findById(ids.get(0)).orElseThrow().getVersion());
+    }
+
+    @Test
+    void testSummaries() {
+        List<ItemSummary> summaries = itemRepository.findSummariesByIdGreaterThanOrderByIdAsc(ids.get(0), Limit.of(2));
+
+        assertEquals(List.of(new ItemSummary(ids.get(1), "apricot", "PROCESSED"), new ItemSummary(ids.get(2), "a_b", null)), summaries);
+    }
+
+    @Test
+    void testFindFieldsSelectsOnlyThoseColumns() {
+        ItemFields fields = ItemFields.parse("status,name");
+
+        List<Map<String, Object>> page = itemRepository.findFields(new ItemFilter(null, null, "a@a.com", null).after(ids.get(0)), fields, 10);
+
+        //the id comes first, the fields keep the order of the item
+        assertEquals(List.of("id", "name", "status"), List.copyOf(page.get(0).keySet()));
+        assertEquals(List.of(ids.get(2), ids.get(3)), page.stream().map(values -> values.get("id")).toList());
+        assertEquals("banana", page.get(1).get("name"));
+        assertNull(page.get(0).get("status"));
+    }
+
+    @Test
+    void testFilteredColumnsAreIndexed() {
+        List<String> indexed = jdbcTemplate.queryForList(
+                "SELECT INDEX_NAME FROM INFORMATION_SCHEMA.INDEXES WHERE TABLE_NAME = 'ITEM'", String.class);
+
+        assertTrue(indexed.containsAll(List.of("IDX_ITEM_STATUS", "IDX_ITEM_EMAIL", "IDX_ITEM_NAME")), indexed.toString());
+    }
+
+    @Test
+    void testEntitiesAreNotValidatedAgainOnWrite() {
+        //validation is the job of the controller and the batch service, see jakarta.persistence.validation.mode
+        Item saved = itemRepository.saveAndFlush(new Item(null, "bad", "desc", "NEW", "not an email"));
+
+        assertEquals("not an email", itemRepository.findById(saved.getId()).orElseThrow().getEmail());
+    }
+
+    @Test
+    void testNewItemsAreStampedWithTheDatabaseTime() {
+        //the test runs in one transaction, whose CURRENT_TIMESTAMP the clock keeps reusing
+        Instant now = clock.now();
+
+        assertEquals(now, clock.now());
+        assertEquals(now, itemRepository.findById(ids.get(0)).orElseThrow().getLastModified());
+        assertEquals(now, jdbcTemplate.queryForObject("SELECT CURRENT_TIMESTAMP", OffsetDateTime.class).toInstant());
+    }
+}
@@ -0,0 +1,67 @@
+package com.siemens.internship;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+public class ItemServiceCacheTest {
+    @MockBean
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private ItemService itemService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @BeforeEach
+    void setUp() {
+        cacheManager.getCache(ItemService.ITEM_CACHE).clear();
+    }
+
+    @Test
+    void testFindByIdIsReadThrough() {
+        Item item = new Item(1L, "Item", "desc", "NEW", "a@a.com");
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(item));
+
+        assertEquals(item, itemService.findById(1L).get());
+        assertEquals(item, itemService.findById(1L).get());
+
+        //the second lookup is served from the cache
+        verify(itemRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    void testMissingItemsAreNotCached() {
+        when(itemRepository.findById(2L)).thenReturn(Optional.empty());
+
+        assertTrue(itemService.findById(2L).isEmpty());
+        assertTrue(itemService.findById(2L).isEmpty());
+
+        verify(itemRepository, times(2)).findById(2L);
+    }
+
+    @Test
+    void testSaveWritesThroughAndDeleteEvicts() {
+        Item item = new Item(3L, "Item", "desc", "NEW", "a@a.com");
+        when(itemRepository.save(item)).thenReturn(item);
+
+        itemService.save(item);
+        assertEquals(item, itemService.findById(3L).get());
+        verify(itemRepository, never()).findById(3L);
+
+        itemService.deleteById(3L);
+        when(itemRepository.findById(3L)).thenReturn(Optional.empty());
+        assertTrue(itemService.findById(3L).isEmpty());
+        verify(itemRepository).findById(3L);
+    }
+}
@@ -1,24 +1,41 @@
 package com.siemens.internship;
 
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.domain.Specification;
 
-import java.util.Collections;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 public class ItemServiceTest {
     @Mock
     private ItemRepository itemRepository;
 
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private ItemProcessingEngine processingEngine;
+
+    @Mock
+    private ItemOutbox outbox;
+
     @InjectMocks
     private ItemService itemService;
 
@@ -28,21 +45,59 @@ public class ItemServiceTest {
     }
 
     @Test
-    public void testFindAll() {
-        List<Item> items=List.of(new Item(1L,"name","desc","NEW","test@gmail.com"));
-        when(itemRepository.findAll()).thenReturn(items);
-        List<Item> result=itemService.findAll();
-        assertEquals(1,result.size());
-        assertEquals(items.get(0),result.get(0));
-
-        items=List.of();
-        when(itemRepository.findAll()).thenReturn(items);
-        result=itemService.findAll();
-        assertEquals(0,result.size());
-
-        //in case of exception
-        when(itemRepository.findAll()).thenThrow(new RuntimeException("DB error"));
-        assertThrows(RuntimeException.class, () -> itemService.findAll());
+    public void testFindPage() {
+        List<Item> items=List.of(new Item(5L,"name","desc","NEW","test@gmail.com"));
+
+        //first page starts before any id
+        when(itemRepository.findByIdGreaterThanOrderByIdAsc(Long.MIN_VALUE, Limit.of(10))).thenReturn(items);
+        assertEquals(items,itemService.findPage(null,10));
+
+        //next page starts after the cursor
+        when(itemRepository.findByIdGreaterThanOrderByIdAsc(5L, Limit.of(10))).thenReturn(List.of());
+        assertTrue(itemService.findPage(5L,10).isEmpty());
+    }
+
+    @Test
+    public void testFindFilteredPage() {
+        List<Item> items=List.of(new Item(5L,"name","desc","NEW","test@gmail.com"));
+        when(itemRepository.findByIdGreaterThanOrderByIdAsc(Long.MIN_VALUE, Limit.of(10))).thenReturn(items);
+        when(itemRepository.findBy(any(Specification.class), any())).thenReturn(items);
+
+        //without filters the plain keyset query is used
+        assertEquals(items,itemService.findPage(ItemFilter.NONE,null,10));
+        verify(itemRepository, never()).findBy(any(Specification.class), any());
+
+        assertEquals(items,itemService.findPage(new ItemFilter("NEW",null,null,null),null,10));
+        verify(itemRepository).findBy(any(Specification.class), any());
+    }
+
+    @Test
+    public void testFindFieldsAndSummaryPages() {
+        ItemFields fields=ItemFields.parse("name");
+        List<Map<String,Object>> rows=List.of(Map.of("id",5L,"name","name"));
+        when(itemRepository.findFields(any(), eq(fields), eq(10))).thenReturn(rows);
+        List<ItemSummary> summaries=List.of(new ItemSummary(5L,"name","NEW"));
+        when(itemRepository.findSummariesByIdGreaterThanOrderByIdAsc(2L, Limit.of(10))).thenReturn(summaries);
+
+        assertEquals(rows,itemService.findPage(ItemFilter.NONE,null,10,fields));
+        assertEquals(summaries,itemService.findSummaryPage(2L,10));
+        //neither loads entities
+        verify(itemRepository, never()).findByIdGreaterThanOrderByIdAsc(any(), any());
+    }
+
+    @Test
+    public void testForEach() {
+        Item item1=new Item(1L,"Item1","desc","NEW","a@a.com");
+        Item item2=new Item(2L,"Item2","desc","NEW","b@b.com");
+        when(itemRepository.streamAll()).thenReturn(Stream.of(item1,item2));
+
+        List<Item> seen=new ArrayList<>();
+        itemService.forEach(seen::add);
+
+        assertEquals(List.of(item1,item2),seen);
+        //every consumed item is released from the persistence context
+        verify(entityManager).detach(item1);
+        verify(entityManager).detach(item2);
     }
 
     @Test
@@ -73,6 +128,8 @@ public class ItemServiceTest {
         when(itemRepository.save(item1)).thenReturn(item);
         Item savedItem=itemService.save(item1);
         assertNotNull(savedItem.getId());
+        //the outbox gets the item as stored, with its generated id
+        verify(outbox).saved(item);
 
         when(itemRepository.save(item2)).thenReturn(item2);
         savedItem=itemService.save(item2);
@@ -93,6 +150,7 @@ public class ItemServiceTest {
         //test when id exists
         itemService.deleteById(1L);
         verify(itemRepository).deleteById(1L);
+        verify(outbox).deleted(1L);
 
         //test when id doesn't exist
         doNothing().when(itemRepository).deleteById(999L);
@@ -103,73 +161,73 @@ public class ItemServiceTest {
     }
 
     @Test
-    public void testProcessItemsAsync(){
-        List<Long> ids = List.of(1L, 2L);
-        Item item1 = new Item(1L, "Item1", "desc", "NEW", "test1@example.com");
-        Item item2 = new Item(2L, "Item2", "desc", "NEW", "test2@example.com");
-        when(itemRepository.findAllIds()).thenReturn(ids);
-        when(itemRepository.findById(1L)).thenReturn(Optional.of(item1));
-        when(itemRepository.findById(2L)).thenReturn(Optional.of(item2));
-        when(itemRepository.save(any(Item.class))).thenAnswer(i -> i.getArgument(0));
-
-        for (Long id : ids) {
-            Item item = new Item(id, "Item " + id, "desc", "NEW", "email@test.com");
-            when(itemRepository.findById(id)).thenReturn(Optional.of(item));
-            when(itemRepository.save(any())).thenAnswer(i -> i.getArguments()[0]);
-        }
-
-        CompletableFuture<List<Item>> future = itemService.processItemsAsync();
-        List<Item> result=future.join();
-        assertEquals(2, result.size());
-        assertEquals("PROCESSED", result.get(0).getStatus());
-        assertEquals("PROCESSED", result.get(1).getStatus());
-        verify(itemRepository, times(2)).save(any(Item.class));
-
+    public void testUpdate() {
+        Item item=new Item(null,"name","desc","NEW","test@gmail.com");
+
+        Item stored=new Item(1L,"name","desc","NEW","test@gmail.com");
+        stored.setVersion(4L);
+        stored.setLastModified(Instant.parse("2026-01-01T00:00:00Z"));
+        when(itemRepository.findById(1L)).thenReturn(Optional.of(stored));
+
+        //unconditional update of an existing item, the stored row is read back for its version and lastModified
+        when(itemRepository.update(1L,item)).thenReturn(1);
+        Optional<Item> result=itemService.update(1L,item,null);
+        assertEquals(Optional.of(stored),result);
+        assertEquals(4L,result.get().getVersion());
+        verify(outbox).saved(stored);
+
+        //conditional update
+        when(itemRepository.updateIfVersion(1L,3L,item)).thenReturn(1);
+        assertEquals(4L,itemService.update(1L,item,3L).get().getVersion());
+
+        //missing item, nothing changed so nothing is published
+        when(itemRepository.update(2L,item)).thenReturn(0);
+        clearInvocations(outbox);
+        assertTrue(itemService.update(2L,item,null).isEmpty());
+        verify(outbox, never()).saved(any());
+
+        //existing item with another version
+        when(itemRepository.updateIfVersion(1L,2L,item)).thenReturn(0);
+        when(itemRepository.existsById(1L)).thenReturn(true);
+        assertThrows(OptimisticLockingFailureException.class, () -> itemService.update(1L,item,2L));
     }
 
     @Test
-    void testProcessItemsAsyncWithMissingItem() throws Exception {
-        List<Long> ids = List.of(1L, 2L);
-        Item item1 = new Item(1L, "Item1", "desc", "NEW", "a@a.com");
-
-        when(itemRepository.findAllIds()).thenReturn(ids);
-        when(itemRepository.findById(1L)).thenReturn(Optional.of(item1));
-        when(itemRepository.findById(2L)).thenReturn(Optional.empty());
-        when(itemRepository.save(any(Item.class))).thenAnswer(inv -> inv.getArgument(0));
-
-        List<Item> result = itemService.processItemsAsync().get();
-
-        assertEquals(1, result.size());
-        assertEquals("PROCESSED", result.get(0).getStatus());
+    public void testConditionalDelete() {
+        when(itemRepository.deleteItemById(1L)).thenReturn(1);
+        assertTrue(itemService.delete(1L,null));
+        verify(outbox).deleted(1L);
+
+        when(itemRepository.deleteItemById(2L)).thenReturn(0);
+        assertFalse(itemService.delete(2L,null));
+        verify(outbox, never()).deleted(2L);
+        verify(itemRepository, never()).existsById(any());
+
+        when(itemRepository.deleteItemByIdIfVersion(1L,5L)).thenReturn(0);
+        when(itemRepository.existsById(1L)).thenReturn(true);
+        assertThrows(OptimisticLockingFailureException.class, () -> itemService.delete(1L,5L));
+
+        when(itemRepository.existsById(3L)).thenReturn(false);
+        assertFalse(itemService.delete(3L,5L));
     }
 
     @Test
-    void testProcessItemsAsyncSaveFailsForOneItem() throws Exception {
-        List<Long> ids = List.of(1L, 2L);
-        Item item1 = new Item(1L, "Item1", "desc", "NEW", "a@a.com");
-        Item item2 = new Item(2L, "Item2", "desc", "NEW", "b@b.com");
-
-        when(itemRepository.findAllIds()).thenReturn(ids);
-        when(itemRepository.findById(1L)).thenReturn(Optional.of(item1));
-        when(itemRepository.findById(2L)).thenReturn(Optional.of(item2));
-        when(itemRepository.save(item1)).thenThrow(new RuntimeException("DB error"));
-        when(itemRepository.save(item2)).thenReturn(item2);
-
-        List<Item> result = itemService.processItemsAsync().get();
+    public void testProcessItemsAsync(){
+        ProcessingSummary summary=new ProcessingSummary(1,0);
+        when(processingEngine.processAll()).thenReturn(CompletableFuture.completedFuture(summary));
 
-        assertEquals(1, result.size());
-        assertEquals(2L, result.get(0).getId());
+        assertEquals(summary,itemService.processItemsAsync().join());
+        verify(processingEngine).processAll();
     }
 
     @Test
-    void testProcessItemsAsyncEmptyList() throws Exception {
-        when(itemRepository.findAllIds()).thenReturn(Collections.emptyList());
-
-        List<Item> result = itemService.processItemsAsync().get();
+    public void testProcessItemsAsyncWithProcessor(){
+        ItemProcessor processor=item->item.setStatus("DONE");
+        ProcessingSummary summary=new ProcessingSummary(1,0);
+        when(processingEngine.processAll(processor)).thenReturn(CompletableFuture.completedFuture(summary));
 
-        assertTrue(result.isEmpty());
-        verify(itemRepository, never()).findById(any());
-        verify(itemRepository, never()).save(any());
+        assertEquals(summary,itemService.processItemsAsync(processor).join());
+        verify(processingEngine, never()).processAll();
     }
 
 }
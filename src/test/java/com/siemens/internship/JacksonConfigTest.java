@@ -0,0 +1,109 @@
+package com.siemens.internship;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//formats and compression are negotiated by the server, so these requests go over http to a real one
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "spring.datasource.url=jdbc:h2:mem:formats")
+public class JacksonConfigTest {
+    private static final TypeReference<List<Map<String, Object>>> ITEM_LIST = new TypeReference<>() {
+    };
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setUp() {
+        itemRepository.deleteAll();
+        itemRepository.saveAll(IntStream.range(0, 100)
+                .mapToObj(i -> new Item(null, "Item" + i, "desc", "NEW", "a@a.com")).toList());
+    }
+
+    private HttpResponse<byte[]> get(String path, String header, String value) throws Exception {
+        return client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + path)).header(header, value).GET().build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    @Test
+    void testItemsAsCbor() throws Exception {
+        HttpResponse<byte[]> response = get("/api/items", "Accept", "application/cbor");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("application/cbor", response.headers().firstValue("Content-Type").orElseThrow());
+        List<Map<String, Object>> items = new CBORMapper().readValue(response.body(), ITEM_LIST);
+        assertEquals(100, items.size());
+        assertEquals("Item0", items.get(0).get("name"));
+        //configured like the json mapper, dates are ISO strings and not timestamps
+        assertInstanceOf(String.class, items.get(0).get("lastModified"));
+    }
+
+    @Test
+    void testItemsAsSmile() throws Exception {
+        HttpResponse<byte[]> response = get("/api/items", "Accept", "application/x-jackson-smile");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("application/x-jackson-smile", response.headers().firstValue("Content-Type").orElseThrow());
+        assertEquals(100, new SmileMapper().readValue(response.body(), ITEM_LIST).size());
+    }
+
+    @Test
+    void testItemCreatedFromCbor() throws Exception {
+        byte[] body = new CBORMapper().writeValueAsBytes(Map.of("name", "Cbor", "description", "desc", "status", "NEW", "email", "c@c.com"));
+        HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/items"))
+                        .header("Content-Type", "application/cbor")
+                        .header("Accept", "application/cbor")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(body)).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+
+        assertEquals(201, response.statusCode());
+        Map<String, Object> created = new CBORMapper().readValue(response.body(), new TypeReference<>() {
+        });
+        assertTrue(itemRepository.findById(((Number) created.get("id")).longValue()).isPresent());
+    }
+
+    @Test
+    void testLargeResponsesAreGzipped() throws Exception {
+        HttpResponse<byte[]> response = get("/api/items", "Accept-Encoding", "gzip");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElseThrow());
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+            assertEquals(100, new ObjectMapper().readValue(in, ITEM_LIST).size());
+        }
+    }
+
+    @Test
+    void testPlainJsonWithoutAcceptEncoding() throws Exception {
+        HttpResponse<byte[]> response = get("/api/items", "Accept", "application/json");
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Encoding").isEmpty());
+        assertEquals(100, new ObjectMapper().readValue(response.body(), ITEM_LIST).size());
+    }
+}
@@ -0,0 +1,35 @@
+package com.siemens.internship;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//beans the startup doesn't need are left for the first request, scheduled ones still start with the application
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:lazy")
+@ActiveProfiles("lazy")
+public class LazyProfileTest {
+    @Autowired
+    private ConfigurableApplicationContext context;
+
+    @Test
+    void testBeansAreCreatedOnFirstUse() {
+        assertFalse(context.getBeanFactory().containsSingleton("itemBatchService"));
+        assertTrue(context.getBeanFactory().containsSingleton("itemChangeRelay"));
+
+        ItemBatchService itemBatchService = context.getBean(ItemBatchService.class);
+        assertNotNull(itemBatchService);
+        assertTrue(context.getBeanFactory().containsSingleton("itemBatchService"));
+    }
+
+    @Test
+    void testRepositoriesWorkAfterDeferredBootstrap() {
+        ItemRepository itemRepository = context.getBean(ItemRepository.class);
+        Item saved = itemRepository.save(new Item(null, "Item", "desc", "NEW", "a@a.com"));
+
+        assertTrue(itemRepository.findById(saved.getId()).isPresent());
+    }
+}
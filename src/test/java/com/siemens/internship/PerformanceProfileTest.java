@@ -0,0 +1,43 @@
+package com.siemens.internship;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//the Flyway schema has to match the entities, validate fails the context if a migration is missing
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:performance;QUERY_CACHE_SIZE=64",
+        "spring.jpa.hibernate.ddl-auto=validate"})
+@ActiveProfiles("performance")
+public class PerformanceProfileTest {
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ItemRepository itemRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void testSchemaIsMigratedByFlyway() {
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM \"flyway_schema_history\" WHERE \"version\" = '1' AND \"success\"", Integer.class));
+
+        Item saved = itemRepository.save(new Item(null, "Item", "desc", "NEW", "a@a.com"));
+        assertTrue(itemRepository.findById(saved.getId()).isPresent());
+    }
+
+    @Test
+    void testPoolIsFixedSizeAndMeasured() {
+        assertEquals(24, meterRegistry.get("hikaricp.connections.max").gauge().value());
+        assertEquals(24, meterRegistry.get("hikaricp.connections.min").gauge().value());
+        assertNotNull(meterRegistry.get("hikaricp.connections.acquire").timer());
+        assertNotNull(meterRegistry.get("hikaricp.connections.usage").timer());
+    }
+}
@@ -0,0 +1,119 @@
+package com.siemens.internship;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(ProcessingJobController.class)
+public class ProcessingJobControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ProcessingJobService jobService;
+
+    @Test
+    void testStartJob() throws Exception {
+        ProcessingJob job = new ProcessingJob(10);
+        when(jobService.start(null)).thenReturn(job);
+
+        mockMvc.perform(post("/api/items/process/jobs"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", endsWith("/api/items/process/jobs/" + job.getId())))
+                .andExpect(jsonPath("$.id", is(job.getId())))
+                .andExpect(jsonPath("$.status", is("RUNNING")))
+                .andExpect(jsonPath("$.total", is(10)));
+    }
+
+    @Test
+    void testStartJobWithProcessor() throws Exception {
+        ProcessingJob job = new ProcessingJob(10);
+        job.setProcessor("uppercase");
+        when(jobService.start("uppercase")).thenReturn(job);
+        when(jobService.start("missing")).thenThrow(new IllegalArgumentException("Unknown item processor missing"));
+
+        mockMvc.perform(post("/api/items/process/jobs").param("processor", "uppercase"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.processor", is("uppercase")));
+        mockMvc.perform(post("/api/items/process/jobs").param("processor", "missing"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testStartJobRejectedWhileBusy() throws Exception {
+        when(jobService.start(null)).thenThrow(new ProcessingRejectedException(2, Duration.ofSeconds(30)));
+
+        mockMvc.perform(post("/api/items/process/jobs"))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "30"));
+    }
+
+    @Test
+    void testGetJobFailures() throws Exception {
+        ProcessingJob job = new ProcessingJob(10);
+        when(jobService.findById(job.getId())).thenReturn(Optional.of(job));
+        when(jobService.findById("missing")).thenReturn(Optional.empty());
+        when(jobService.findFailures(job.getId(), 0L, 100))
+                .thenReturn(List.of(new ProcessingFailure(7L, new IllegalStateException("bad row"), 3)));
+
+        mockMvc.perform(get("/api/items/process/jobs/" + job.getId() + "/failures"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].itemId", is(7)))
+                .andExpect(jsonPath("$[0].attempts", is(3)))
+                .andExpect(jsonPath("$[0].cause", is("IllegalStateException: bad row")));
+        mockMvc.perform(get("/api/items/process/jobs/missing/failures"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/api/items/process/jobs/" + job.getId() + "/failures").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGetJob() throws Exception {
+        ProcessingJob job = new ProcessingJob(10);
+        job.setProcessed(4);
+        job.setFailed(1);
+        when(jobService.findById(job.getId())).thenReturn(Optional.of(job));
+        when(jobService.findById("missing")).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/items/process/jobs/" + job.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.processed", is(4)))
+                .andExpect(jsonPath("$.failed", is(1)))
+                .andExpect(jsonPath("$.throughput").isNumber())
+                .andExpect(jsonPath("$.etaSeconds").exists());
+
+        mockMvc.perform(get("/api/items/process/jobs/missing"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testCancelJob() throws Exception {
+        ProcessingJob cancelled = new ProcessingJob(10);
+        cancelled.setStatus(ProcessingJob.Status.CANCELLED);
+        ProcessingJob completed = new ProcessingJob(10);
+        completed.setStatus(ProcessingJob.Status.COMPLETED);
+        when(jobService.cancel(cancelled.getId())).thenReturn(Optional.of(cancelled));
+        when(jobService.cancel(completed.getId())).thenReturn(Optional.of(completed));
+        when(jobService.cancel("missing")).thenReturn(Optional.empty());
+
+        mockMvc.perform(delete("/api/items/process/jobs/" + cancelled.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status", is("CANCELLED")));
+        mockMvc.perform(delete("/api/items/process/jobs/" + completed.getId()))
+                .andExpect(status().isConflict());
+        mockMvc.perform(delete("/api/items/process/jobs/missing"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,271 @@
+package com.siemens.internship;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ProcessingJobServiceTest {
+    @Mock
+    private ProcessingJobRepository jobRepository;
+
+    @Mock
+    private ItemRepository itemRepository;
+
+    @Mock
+    private ItemProcessingEngine processingEngine;
+
+    @Mock
+    private ProcessingFailureRepository failureRepository;
+
+    @Mock
+    private ProcessingLeases leases;
+
+    @Mock
+    private DatabaseClock clock;
+
+    @InjectMocks
+    private ProcessingJobService jobService;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(jobService, "leaseDuration", Duration.ofMinutes(5));
+        when(jobRepository.save(any())).thenAnswer(i -> i.getArgument(0));
+        when(leases.newOwner()).thenReturn("node/1", "node/2", "node/3");
+        when(clock.now()).thenReturn(Instant.now());
+        when(jobRepository.claim(anyString(), anyString(), anyLong())).thenReturn(1);
+        when(jobRepository.renew(anyString(), anyString(), anyLong())).thenReturn(1);
+        when(jobRepository.isRunning(anyString(), anyString())).thenReturn(true);
+        when(jobRepository.recordProgress(anyString(), anyString(), anyLong(), anyLong(), anyLong(), anyLong())).thenReturn(1);
+    }
+
+    private ItemProcessingEngine.ChunkListener runningListener() {
+        ArgumentCaptor<ItemProcessingEngine.ChunkListener> listener = ArgumentCaptor.forClass(ItemProcessingEngine.ChunkListener.class);
+        verify(processingEngine).runChanged(anyLong(), eq(false), listener.capture());
+        return listener.getValue();
+    }
+
+    @Test
+    public void testStartRecordsProgressAndCompletes() {
+        when(processingEngine.countChanged()).thenReturn(3L);
+        when(processingEngine.runChanged(anyLong(), eq(false), any())).thenAnswer(i -> {
+            ItemProcessingEngine.ChunkListener listener = i.getArgument(2);
+            listener.onChunk(new ItemProcessingEngine.ChunkResult(List.of(), 2, 1, 3L));
+            return CompletableFuture.completedFuture(null);
+        });
+
+        ProcessingJob job = jobService.start(null);
+
+        assertEquals(3L, job.getTotal());
+        assertEquals(ProcessingJob.Status.RUNNING, job.getStatus());
+        //a new job starts from the beginning and only visits items that aren't processed yet
+        verify(processingEngine).runChanged(eq(Long.MIN_VALUE), eq(false), any());
+        verify(processingEngine, never()).run(anyLong(), any(), anyBoolean(), any());
+        assertEquals("node/1", job.getOwner());
+        assertNotNull(job.getLeaseExpiresAt());
+        verify(jobRepository).recordProgress(job.getId(), "node/1", 2, 1, 3L, Duration.ofMinutes(5).toNanos());
+        verify(jobRepository).finish(eq(job.getId()), eq("node/1"), eq(ProcessingJob.Status.COMPLETED), any());
+    }
+
+    @Test
+    public void testRunCarriesJobIdForItsFailures() {
+        when(processingEngine.runChanged(anyLong(), eq(false), any())).thenReturn(new CompletableFuture<>());
+        ProcessingJob job = jobService.start(null);
+
+        ArgumentCaptor<ItemProcessingEngine.ChunkListener> listener = ArgumentCaptor.forClass(ItemProcessingEngine.ChunkListener.class);
+        verify(processingEngine).runChanged(anyLong(), eq(false), listener.capture());
+        assertEquals(job.getId(), listener.getValue().jobId());
+
+        ProcessingFailure failure = new ProcessingFailure(7L, new RuntimeException("boom"), 3);
+        when(failureRepository.findByJobIdAndIdGreaterThanOrderByIdAsc(job.getId(), 0L, Limit.of(10))).thenReturn(List.of(failure));
+        assertEquals(List.of(failure), jobService.findFailures(job.getId(), 0L, 10));
+    }
+
+    @Test
+    public void testFailedRunFailsJob() {
+        when(processingEngine.runChanged(anyLong(), eq(false), any()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("DB error")));
+
+        ProcessingJob job = jobService.start(null);
+
+        verify(jobRepository).finish(eq(job.getId()), eq("node/1"), eq(ProcessingJob.Status.FAILED), any());
+    }
+
+    @Test
+    public void testStartWithProcessor() {
+        ItemProcessor uppercase = item -> item.setName(item.getName().toUpperCase());
+        ReflectionTestUtils.setField(jobService, "processors", Map.of("uppercase", uppercase));
+        when(itemRepository.count()).thenReturn(5L);
+        when(processingEngine.run(anyLong(), any(), anyBoolean(), any())).thenReturn(new CompletableFuture<>());
+
+        ProcessingJob job = jobService.start("uppercase");
+
+        //a custom processor visits every item
+        assertEquals(5L, job.getTotal());
+        assertEquals("uppercase", job.getProcessor());
+        verify(processingEngine).run(eq(Long.MIN_VALUE), eq(uppercase), eq(false), any());
+        //unknown processors are rejected before a job is created
+        assertThrows(IllegalArgumentException.class, () -> jobService.start("missing"));
+        verify(jobRepository, times(1)).save(any());
+    }
+
+    @Test
+    public void testResumedJobFailsWithoutItsProcessor() {
+        ProcessingJob job = new ProcessingJob(10);
+        job.setProcessor("removed");
+        when(jobRepository.findExpired()).thenReturn(List.of(job));
+
+        jobService.resumeInterruptedJobs();
+
+        verify(processingEngine, never()).run(anyLong(), any(), anyBoolean(), any());
+        verify(jobRepository).finish(eq(job.getId()), eq("node/1"), eq(ProcessingJob.Status.FAILED), any());
+    }
+
+    @Test
+    public void testCancel() {
+        CompletableFuture<Void> run = new CompletableFuture<>();
+        when(processingEngine.runChanged(anyLong(), eq(false), any())).thenReturn(run);
+        ProcessingJob job = jobService.start(null);
+        ItemProcessingEngine.ChunkListener listener = runningListener();
+        assertFalse(listener.isCancelled());
+
+        when(jobRepository.findById(job.getId())).thenReturn(Optional.of(job));
+        assertEquals(Optional.of(job), jobService.cancel(job.getId()));
+
+        //the running lanes see the flag and the job is ended as cancelled
+        assertTrue(listener.isCancelled());
+        verify(jobRepository).finish(eq(job.getId()), eq(ProcessingJob.Status.CANCELLED), any());
+
+        //unknown job
+        when(jobRepository.findById("missing")).thenReturn(Optional.empty());
+        assertTrue(jobService.cancel("missing").isEmpty());
+    }
+
+    @Test
+    public void testJobCancelledOnAnotherNodeStopsAtItsNextChunk() {
+        when(processingEngine.runChanged(anyLong(), eq(false), any())).thenReturn(new CompletableFuture<>());
+        ProcessingJob job = jobService.start(null);
+        ItemProcessingEngine.ChunkListener listener = runningListener();
+
+        when(jobRepository.isRunning(job.getId(), "node/1")).thenReturn(false);
+
+        assertTrue(listener.isCancelled());
+    }
+
+    @Test
+    public void testProgressOfAnEndedJobStopsTheRun() {
+        when(processingEngine.runChanged(anyLong(), eq(false), any())).thenReturn(new CompletableFuture<>());
+        ProcessingJob job = jobService.start(null);
+        ItemProcessingEngine.ChunkListener listener = runningListener();
+
+        //the conditional update records nothing once the job is no longer running for this owner
+        when(jobRepository.recordProgress(eq(job.getId()), eq("node/1"), anyLong(), anyLong(), anyLong(), anyLong())).thenReturn(0);
+        listener.onChunk(new ItemProcessingEngine.ChunkResult(List.of(), 2, 0, 3L));
+
+        verify(jobRepository, never()).isRunning(anyString(), anyString());
+        assertTrue(listener.isCancelled());
+    }
+
+    @Test
+    public void testResumeInterruptedJobsFromCheckpoint() {
+        ProcessingJob job = new ProcessingJob(10);
+        job.setLastProcessedId(42L);
+        when(jobRepository.findExpired()).thenReturn(List.of(job));
+        when(processingEngine.runChanged(anyLong(), eq(false), any())).thenReturn(new CompletableFuture<>());
+
+        jobService.resumeInterruptedJobs();
+
+        verify(jobRepository).claim(job.getId(), "node/1", Duration.ofMinutes(5).toNanos());
+        verify(processingEngine).runChanged(eq(42L), eq(false), any());
+    }
+
+    @Test
+    public void testJobClaimedByAnotherNodeIsNotResumed() {
+        ProcessingJob job = new ProcessingJob(10);
+        when(jobRepository.findExpired()).thenReturn(List.of(job));
+        when(jobRepository.claim(anyString(), anyString(), anyLong())).thenReturn(0);
+
+        jobService.resumeInterruptedJobs();
+
+        verify(processingEngine, never()).runChanged(anyLong(), anyBoolean(), any());
+    }
+
+    @Test
+    public void testHeartbeatRenewsRunningJobsAndStopsLostOnes() {
+        when(processingEngine.runChanged(anyLong(), eq(false), any())).thenReturn(new CompletableFuture<>());
+        ProcessingJob job = jobService.start(null);
+        ItemProcessingEngine.ChunkListener listener = runningListener();
+
+        jobService.heartbeat();
+
+        verify(jobRepository).renew(job.getId(), "node/1", Duration.ofMinutes(5).toNanos());
+        verify(jobRepository).findExpired();
+        assertFalse(listener.isCancelled());
+
+        //the lease ran out and another node took the job over
+        when(jobRepository.renew(job.getId(), "node/1", Duration.ofMinutes(5).toNanos())).thenReturn(0);
+        jobService.heartbeat();
+
+        assertTrue(listener.isCancelled());
+    }
+
+    @Test
+    public void testRejectedStartKeepsNoJob() {
+        when(processingEngine.runChanged(anyLong(), eq(false), any()))
+                .thenThrow(new ProcessingRejectedException(2, Duration.ofSeconds(30)));
+
+        assertThrows(ProcessingRejectedException.class, () -> jobService.start(null));
+
+        ArgumentCaptor<ProcessingJob> saved = ArgumentCaptor.forClass(ProcessingJob.class);
+        verify(jobRepository).save(saved.capture());
+        verify(jobRepository).deleteById(saved.getValue().getId());
+    }
+
+    @Test
+    public void testRejectedResumeLeavesJobForLater() {
+        ProcessingJob job = new ProcessingJob(10);
+        when(jobRepository.findExpired()).thenReturn(List.of(job));
+        when(processingEngine.runChanged(anyLong(), eq(false), any()))
+                .thenThrow(new ProcessingRejectedException(2, Duration.ofSeconds(30)));
+
+        jobService.resumeInterruptedJobs();
+
+        verify(jobRepository).release(job.getId(), "node/1");
+        verify(jobRepository, never()).finish(anyString(), any(), any());
+        verify(jobRepository, never()).finish(anyString(), anyString(), any(), any());
+    }
+
+    @Test
+    public void testProgressEstimates() {
+        ProcessingJob job = new ProcessingJob(100);
+        job.setStartedAt(job.getStartedAt().minusSeconds(10));
+        job.setProcessed(50);
+
+        assertEquals(5.0, job.getThroughput(), 0.1);
+        //the job keeps running while it's being asked, so the estimate may already be a second up
+        assertEquals(10L, job.getEtaSeconds(), 1L);
+
+        job.setStatus(ProcessingJob.Status.COMPLETED);
+        assertNull(job.getEtaSeconds());
+    }
+}
@@ -0,0 +1,166 @@
+package com.siemens.internship;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//two application nodes sharing one database, as replicas behind a load balancer would
+public class ProcessingLeasesTest {
+    private static ConfigurableApplicationContext node1;
+    private static ConfigurableApplicationContext node2;
+
+    @BeforeAll
+    static void startNodes() {
+        node1 = node("node-1");
+        node2 = node("node-2");
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        node2.close();
+        node1.close();
+    }
+
+    private static ConfigurableApplicationContext node(String name) {
+        return new SpringApplicationBuilder(InternshipApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:partitioned;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.hikari.pool-name=" + name,
+                        "--spring.jmx.enabled=false",
+                        "--items.processing.node-id=" + name,
+                        "--items.processing.partition-size=100",
+                        "--items.processing.chunk-size=20");
+    }
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = node1.getBean(JdbcTemplate.class);
+        jdbcTemplate.update("DELETE FROM item");
+        jdbcTemplate.update("DELETE FROM processing_lease");
+        jdbcTemplate.update("DELETE FROM processing_mark");
+    }
+
+    private static List<Long> createItems(int count) {
+        return node1.getBean(ItemRepository.class)
+                .saveAll(IntStream.range(0, count).mapToObj(i -> new Item(null, "Item" + i, "desc", "NEW", "a@a.com")).toList())
+                .stream().map(Item::getId).toList();
+    }
+
+    //the ids of the items an incremental run on the node processed
+    private static Set<Long> processAll(ConfigurableApplicationContext node) {
+        Set<Long> processed = ConcurrentHashMap.newKeySet();
+        node.getBean(ItemProcessingEngine.class).runChanged(Long.MIN_VALUE, true,
+                result -> result.items().forEach(item -> processed.add(item.getId()))).join();
+        return processed;
+    }
+
+    @Test
+    void testOnlyOneRunHoldsAPartition() {
+        ProcessingLeases leases1 = node1.getBean(ProcessingLeases.class);
+        ProcessingLeases leases2 = node2.getBean(ProcessingLeases.class);
+        String owner1 = leases1.newOwner();
+        String owner2 = leases2.newOwner();
+
+        assertTrue(leases1.claim(7, owner1));
+        assertFalse(leases2.claim(7, owner2));
+        //two runs of one node are told apart too
+        assertFalse(leases1.claim(7, leases1.newOwner()));
+        assertTrue(leases1.renew(7, owner1));
+        assertFalse(leases2.renew(7, owner2));
+
+        leases1.release(7, owner1);
+        assertTrue(leases2.claim(7, owner2));
+        assertFalse(leases1.renew(7, owner1));
+    }
+
+    @Test
+    void testExpiredLeaseIsTakenOver() {
+        ProcessingLeases leases1 = node1.getBean(ProcessingLeases.class);
+        ProcessingLeases leases2 = node2.getBean(ProcessingLeases.class);
+        String owner1 = leases1.newOwner();
+        ReflectionTestUtils.setField(leases1, "leaseDuration", Duration.ofMillis(-1));
+        try {
+            assertTrue(leases1.claim(3, owner1));
+        } finally {
+            ReflectionTestUtils.setField(leases1, "leaseDuration", Duration.ofMinutes(5));
+        }
+
+        //node 1 stopped renewing, e.g. because it died
+        assertTrue(leases2.claim(3, leases2.newOwner()));
+        assertFalse(leases1.renew(3, owner1));
+    }
+
+    @Test
+    void testLeaseRunsOutByTheDatabaseClock() {
+        ProcessingLeases leases1 = node1.getBean(ProcessingLeases.class);
+
+        assertTrue(leases1.claim(9, leases1.newOwner()));
+
+        //lease-duration after the database's time, whatever the node's clock says
+        Long seconds = node1.getBean(JdbcTemplate.class).queryForObject(
+                "SELECT DATEDIFF('SECOND', CURRENT_TIMESTAMP, expires_at) FROM processing_lease WHERE partition_id = 9", Long.class);
+        assertTrue(seconds > 290 && seconds <= 300, String.valueOf(seconds));
+    }
+
+    @Test
+    void testNodesSplitTheWork() {
+        List<Long> ids = createItems(1000);
+
+        CompletableFuture<Set<Long>> run1 = CompletableFuture.supplyAsync(() -> processAll(node1));
+        CompletableFuture<Set<Long>> run2 = CompletableFuture.supplyAsync(() -> processAll(node2));
+        Set<Long> processed1 = run1.join();
+        Set<Long> processed2 = run2.join();
+
+        //every item was processed, and by one node only
+        Set<Long> processed = new HashSet<>(processed1);
+        processed.addAll(processed2);
+        assertEquals(new HashSet<>(ids), processed);
+        assertEquals(ids.size(), processed1.size() + processed2.size());
+    }
+
+    @Test
+    void testPartitionHeldElsewhereIsLeftToItsRun() {
+        List<Long> ids = createItems(300);
+        ProcessingLeases leases1 = node1.getBean(ProcessingLeases.class);
+        //a run on node 1 is still working on the first item's partition
+        long partition = Math.floorDiv(ids.get(0), 100L);
+        String owner1 = leases1.newOwner();
+        assertTrue(leases1.claim(partition, owner1));
+
+        Set<Long> processed2 = processAll(node2);
+
+        assertFalse(processed2.isEmpty());
+        assertTrue(processed2.stream().noneMatch(id -> Math.floorDiv(id, 100L) == partition));
+        //node 2 couldn't look at every partition, so it marked only its own and the next run still finds what it left
+        JdbcTemplate jdbcTemplate = node1.getBean(JdbcTemplate.class);
+        assertEquals(0, sharedMarks(jdbcTemplate));
+        leases1.release(partition, owner1);
+        Set<Long> processed1 = processAll(node1);
+        assertFalse(processed1.isEmpty());
+        assertTrue(processed1.stream().allMatch(id -> Math.floorDiv(id, 100L) == partition));
+        assertEquals(ids.size(), processed1.size() + processed2.size());
+        //with every partition processed the shared mark moves
+        assertEquals(1, sharedMarks(jdbcTemplate));
+    }
+
+    private static int sharedMarks(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM processing_mark WHERE name = ?", Integer.class,
+                ItemProcessingEngine.CHANGES_MARK);
+    }
+}
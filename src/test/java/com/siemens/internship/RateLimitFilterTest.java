@@ -0,0 +1,67 @@
+package com.siemens.internship;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimitFilterTest {
+    private final AtomicLong now = new AtomicLong();
+    private final RateLimitFilter filter = new RateLimitFilter(3, 1, 100, now::get);
+
+    private MockHttpServletResponse request(String client) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/items");
+        request.setRemoteAddr(client);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+        //a rejected request never reaches the controller
+        assertEquals(response.getStatus() == 200, chain.getRequest() != null);
+        return response;
+    }
+
+    @Test
+    void testBurstUpToCapacityThenRejected() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, request("10.0.0.1").getStatus());
+        }
+
+        MockHttpServletResponse rejected = request("10.0.0.1");
+        assertEquals(429, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+    }
+
+    @Test
+    void testClientsHaveTheirOwnBuckets() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            request("10.0.0.1");
+        }
+
+        assertEquals(429, request("10.0.0.1").getStatus());
+        assertEquals(200, request("10.0.0.2").getStatus());
+    }
+
+    @Test
+    void testTokensRefillOverTime() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            request("10.0.0.1");
+        }
+        assertEquals(429, request("10.0.0.1").getStatus());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1500));
+        assertEquals(200, request("10.0.0.1").getStatus());
+        assertEquals(429, request("10.0.0.1").getStatus());
+
+        //never more than capacity, however long the client was away
+        now.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, request("10.0.0.1").getStatus());
+        }
+        assertEquals(429, request("10.0.0.1").getStatus());
+    }
+}
@@ -0,0 +1,71 @@
+package com.siemens.internship;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(ReactiveItemController.class)
+@ActiveProfiles("reactive")
+public class ReactiveItemControllerTest {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private ReactiveItemService itemService;
+
+    @Test
+    void testGetAllItemsStreamsNdjson() throws Exception {
+        when(itemService.findAll()).thenReturn(Flux.just(
+                new Item(1L, "Item1", "desc", "NEW", "a@a.com"),
+                new Item(2L, "Item2", "desc", "NEW", "b@b.com")));
+
+        MvcResult result = mockMvc.perform(get("/api/reactive/items"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(allOf(
+                        startsWith("{\"id\":1,"),
+                        containsString("\n{\"id\":2,"))));
+    }
+
+    @Test
+    void testGetItemById() throws Exception {
+        when(itemService.findById(1L)).thenReturn(Mono.just(new Item(1L, "Item1", "desc", "NEW", "a@a.com")));
+        when(itemService.findById(2L)).thenReturn(Mono.empty());
+
+        MvcResult found = mockMvc.perform(get("/api/reactive/items/1")).andExpect(request().asyncStarted()).andReturn();
+        mockMvc.perform(asyncDispatch(found))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name", is("Item1")));
+
+        MvcResult missing = mockMvc.perform(get("/api/reactive/items/2")).andExpect(request().asyncStarted()).andReturn();
+        mockMvc.perform(asyncDispatch(missing))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testProcessItems() throws Exception {
+        when(itemService.processAll()).thenReturn(Flux.just(new Item(1L, "Item1", "desc", "PROCESSED", "a@a.com")));
+
+        MvcResult result = mockMvc.perform(get("/api/reactive/items/process")).andExpect(request().asyncStarted()).andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("\"status\":\"PROCESSED\"")));
+    }
+}
@@ -0,0 +1,124 @@
+package com.siemens.internship;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ReactiveItemServiceTest {
+    @Mock
+    private ReactiveItemRepository itemRepository;
+
+    @Spy
+    private CacheManager cacheManager = new ConcurrentMapCacheManager(ItemService.ITEM_CACHE);
+
+    @Mock
+    private TransactionalOperator transactionalOperator;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @InjectMocks
+    private ReactiveItemService itemService;
+
+    @BeforeEach
+    public void setUp() {
+        MockitoAnnotations.openMocks(this);
+        ReflectionTestUtils.setField(itemService, "pageSize", 2);
+        ReflectionTestUtils.setField(itemService, "concurrency", 2);
+        when(transactionalOperator.transactional(any(Mono.class))).thenAnswer(i -> i.getArgument(0));
+        when(itemRepository.insertStatusChange(anyString())).thenReturn(Mono.just(1));
+        //items 1 to 5, version 0
+        when(itemRepository.findPageAfter(anyLong(), eq(2))).thenAnswer(i -> {
+            long after = i.getArgument(0);
+            long first = after == Long.MIN_VALUE ? 1 : after + 1;
+            return Flux.fromStream(LongStream.rangeClosed(first, Math.min(first + 1, 5)).mapToObj(ReactiveItemServiceTest::item));
+        });
+    }
+
+    private static Item item(long id) {
+        Item item = new Item(id, "Item" + id, "desc", "NEW", "a@a.com");
+        item.setVersion(0L);
+        return item;
+    }
+
+    @Test
+    void testFindAllReadsPageByPage() {
+        StepVerifier.create(itemService.findAll().map(Item::getId))
+                .expectNext(1L, 2L, 3L, 4L, 5L)
+                .verifyComplete();
+
+        //the short page ends the stream, nothing is read after it
+        verify(itemRepository).findPageAfter(Long.MIN_VALUE, 2);
+        verify(itemRepository).findPageAfter(2L, 2);
+        verify(itemRepository).findPageAfter(4L, 2);
+        verifyNoMoreInteractions(itemRepository);
+    }
+
+    @Test
+    void testFindById() {
+        when(itemRepository.findById(1L)).thenReturn(Mono.just(item(1)));
+        when(itemRepository.findById(2L)).thenReturn(Mono.empty());
+
+        StepVerifier.create(itemService.findById(1L).map(Item::getName)).expectNext("Item1").verifyComplete();
+        StepVerifier.create(itemService.findById(2L)).verifyComplete();
+    }
+
+    @Test
+    void testProcessAll() {
+        Cache cache = cacheManager.getCache(ItemService.ITEM_CACHE);
+        cache.put(1L, item(1));
+        when(itemRepository.updateStatusIfVersion(anyLong(), eq(0L), eq("PROCESSED"))).thenReturn(Mono.just(1));
+        //item 3 changed since it was read
+        when(itemRepository.updateStatusIfVersion(3L, 0L, "PROCESSED")).thenReturn(Mono.just(0));
+
+        StepVerifier.create(itemService.processAll().collectList())
+                .assertNext(items -> {
+                    assertEquals(4, items.size());
+                    assertTrue(items.stream().allMatch(item -> "PROCESSED".equals(item.getStatus()) && item.getVersion() == 1));
+                    assertTrue(items.stream().noneMatch(item -> item.getId() == 3L));
+                })
+                .verifyComplete();
+        assertNull(cache.get(1L));
+        //every update is recorded in the outbox with the version it left the item at, in the update's transaction
+        verify(itemRepository).insertStatusChange("{\"status\":\"PROCESSED\",\"items\":[{\"id\":1,\"version\":1}]}");
+        verify(itemRepository, times(4)).insertStatusChange(anyString());
+        verify(transactionalOperator, times(5)).transactional(any(Mono.class));
+    }
+
+    @Test
+    void testProcessAllBoundsUpdatesInFlight() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        when(itemRepository.updateStatusIfVersion(anyLong(), anyLong(), eq("PROCESSED"))).thenAnswer(i -> Mono.just(1)
+                .doOnSubscribe(s -> maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                .delayElement(Duration.ofMillis(10))
+                .doOnTerminate(inFlight::decrementAndGet));
+
+        StepVerifier.create(itemService.processAll()).expectNextCount(5).verifyComplete();
+
+        assertEquals(2, maxInFlight.get());
+    }
+}